@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * A session running many commands on one open repository, read one per
+ * line from a script.  Each line is split into words at spaces, except
+ * within single or double quotes, and a backslash takes the next
+ * character as it is; blank lines and lines starting with # are
+ * skipped.  Each command prints what it would print if run alone, as
+ * soon as it finishes, and a command that fails prints its error.
+ * A command that fails is never saved on its own, and the working files
+ * it queued are dropped.  Nothing else is rolled back: whatever it
+ * changed in the index, the branches or the settings before it failed
+ * is saved along with the commands after it.
+ * <p>
+ * The changes of the commands are saved once, at the end, and at each
+ * line reading checkpoint.  A command that succeeds and writes or
+ * removes working files is saved at once, so that the commands after
+ * it see them.
+ * @author Sara Wang
+ */
+class Batch {
+
+    /** Line that saves the changes of the commands so far. */
+    static final String CHECKPOINT = "checkpoint";
+
+    /** The repository. */
+    private final Repository repo;
+
+    /** Its commands. */
+    private final CommitTree gitlet;
+
+    /** A session on REPO.
+     * @param repo the repository, open for changes */
+    Batch(Repository repo) {
+        this.repo = repo;
+        this.gitlet = new CommitTree(repo);
+    }
+
+    /** Runs each command of IN, then saves.
+     * @param in the script
+     * @throws GitletException if saving fails, which ends the session */
+    void run(BufferedReader in) throws IOException {
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            String[] args;
+            try {
+                args = parse(line);
+            } catch (GitletException excp) {
+                System.out.println(excp.getMessage());
+                continue;
+            }
+            if (args.length == 0 || args[0].startsWith("#")) {
+                continue;
+            }
+            if (args[0].equals(CHECKPOINT) && args.length == 1) {
+                repo.save();
+                continue;
+            }
+            boolean failed = false;
+            try {
+                Main.command(gitlet, args);
+            } catch (GitletException excp) {
+                System.out.println(excp.getMessage());
+                failed = true;
+            }
+            if (failed) {
+                repo.dropCheckouts();
+            } else if (repo.hasPendingCheckouts()) {
+                repo.save();
+            }
+            System.out.flush();
+        }
+        repo.save();
+    }
+
+    /** Splits LINE into words.
+     * @param line a line of a script
+     * @return its words */
+    static String[] parse(String line) {
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean inWord = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && quote != '\'') {
+                if (++i == line.length()) {
+                    throw Utils.error("Unfinished escape: %s", line);
+                }
+                word.append(line.charAt(i));
+                inWord = true;
+            } else if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                inWord = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (quote != 0) {
+            throw Utils.error("Unfinished quote: %s", line);
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+}
@@ -11,42 +11,58 @@ public class Blob implements Serializable {
     /** Serial version UID. */
     private static final long serialVersionUID = 1234567L;
 
-    /** The unique id of a blob. */
+    /** The unique id of a blob, the hash of its content. */
     private String id;
 
-    /** The content of the blob. */
-    private byte[] content;
+    /** The file holding the content of the blob. */
+    private File file;
 
     /** The name of the blob. */
     private String name;
 
     /** The files, have to actually exist.
-     * @param filename name of the file used to created this blob */
+     * @param filename name of the file used to created this blob
+     * @throws GitletException if there is no such file */
     public Blob(String filename) {
         File f = new File(filename);
         if (!f.exists()) {
-            System.out.println("File does not exist.");
-            return;
+            throw Utils.error("File does not exist.");
         }
-        this.id = Utils.sha1(Utils.serialize(this));
-
         this.name = filename;
-        this.content = Utils.readContents(f);
+        this.file = f;
+        this.id = ObjectStore.hashFile(f);
     }
 
-    /** Nonexistent files.
-     * @param filename name of the file used to created this blob
-     * @param nonexistent to distinguish from the real blobs */
-    public Blob(String filename, Boolean nonexistent) {
-        this.id = Utils.sha1(Utils.serialize(this));
-        this.name = filename;
+    /** A file whose content is already known to hash to ID.
+     * @param file the file used to created this blob
+     * @param id the id of its content */
+    public Blob(File file, String id) {
+        this.name = file.getPath();
+        this.file = file;
+        this.id = id;
+    }
+
+    /** Returns the id of this blob, which depends only on its content.
+     * @return the id */
+    public String getId() {
+        return id;
+    }
 
+    /** Returns the name of the blob.
+     * @return the filename */
+    public String getName() {
+        return name;
     }
 
-    /** Returns the content of the file.
-     * @return the content of the file in byte[]. */
-    public byte[] getContent() {
-        return content;
+    /** Streams the content of the file into STORE, unless a blob with the
+     * same content is already stored there.
+     * @param store the object store
+     * @return the id of the stored content */
+    String save(ObjectStore store) {
+        if (!store.contains(id)) {
+            id = store.putFile(file);
+        }
+        return id;
     }
 
 }
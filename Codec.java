@@ -0,0 +1,177 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A way of compressing objects.  Every stored object records the id of
+ * the codec it was written with, so a repository can change codecs at
+ * any time and still read what it wrote before.  Deflate compresses
+ * well; LZ is several times faster but compresses less; store does not
+ * compress at all.
+ * @author Sara Wang
+ */
+interface Codec {
+
+    /** Id of the deflate codec. */
+    int DEFLATE = 0;
+
+    /** Id of the codec that stores bytes as they are. */
+    int STORE = 1;
+
+    /** Id of the LZ codec. */
+    int LZ = 2;
+
+    /** Name of the codec used when none is configured. */
+    String DEFAULT = "deflate";
+
+    /** Returns the id recorded in objects written with this codec.
+     * @return the id */
+    int id();
+
+    /** Returns the name the codec is configured by.
+     * @return the name */
+    String name();
+
+    /** Returns a stream compressing what is written to it into OUT.
+     * Closing it finishes the compressed data and closes OUT.
+     * @param out the stream to write to
+     * @return the compressing stream */
+    OutputStream compress(OutputStream out);
+
+    /** Returns a stream of the bytes compressed in IN.
+     * @param in compressed data
+     * @return the uncompressed data */
+    InputStream decompress(InputStream in);
+
+    /** Returns BODY compressed.
+     * @param body the bytes
+     * @return the compressed bytes */
+    default byte[] compress(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream z = compress(out)) {
+            z.write(body);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the codec with this id.
+     * @param id a codec id
+     * @return the codec */
+    static Codec forId(int id) {
+        if (id < 0 || id >= Codecs.ALL.length) {
+            throw Utils.error("Unknown codec %d.", id);
+        }
+        return Codecs.ALL[id];
+    }
+
+    /** Returns the codec with this name.
+     * @param name a codec name
+     * @return the codec, or null if there is none */
+    static Codec forName(String name) {
+        for (Codec c : Codecs.ALL) {
+            if (c.name().equals(name)) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    /** The known codecs. */
+    final class Codecs {
+
+        /** Every codec, by id. */
+        private static final Codec[] ALL = {
+            new Deflate(), new Store(), new LzCodec()
+        };
+
+        /** Not instantiable. */
+        private Codecs() {
+        }
+    }
+
+    /** Compression by the deflate algorithm of java.util.zip. */
+    final class Deflate implements Codec {
+
+        @Override
+        public int id() {
+            return DEFLATE;
+        }
+
+        @Override
+        public String name() {
+            return "deflate";
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) {
+            Deflater deflater = new Deflater();
+            return new DeflaterOutputStream(out, deflater,
+                    ObjectStore.BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            Inflater inflater = new Inflater();
+            return new InflaterInputStream(in, inflater,
+                    ObjectStore.BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+    }
+
+    /** No compression. */
+    final class Store implements Codec {
+
+        @Override
+        public int id() {
+            return STORE;
+        }
+
+        @Override
+        public String name() {
+            return "none";
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len)
+                        throws IOException {
+                    out.write(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return in;
+        }
+    }
+}
@@ -2,7 +2,6 @@ package gitlet;
 
 
 
-import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Date;
@@ -22,25 +21,29 @@ public class Commit implements Serializable {
     /** Creation date. */
     private Date commitDate;
 
-    /** Filename to Blob mapping. */
-    private HashMap<String, Blob> blobsOfCommit;
+    /** Id of the tree holding the files of this commit. */
+    private String treeOfCommit;
 
-    /** List of parents. */
-    private ArrayList<Commit> parentsOfCommit;
+    /** Filename to blob id mapping, read from the tree when needed. */
+    private transient HashMap<String, String> blobsOfCommit;
+
+    /** Ids of the parents. */
+    private ArrayList<String> parentsOfCommit;
 
     /** Long UID. */
-    private static final long serialVersionUID = 12345678L;
+    private static final long serialVersionUID = 12345679L;
 
-    /** Commit ID. */
-    private String _id;
+    /** Commit ID, the hash of the stored commit. */
+    private transient String _id;
 
-    /** Create a commit.
+    /** Create a commit of a tree already stored, and store it.
+     * @param store the object store of the repository
      * @param messages commit message
      * @param date commit date
-     * @param blobs blobs in this commit
-     * @param parents the parent commits */
-    public Commit(String messages, Date date, HashMap<String, Blob> blobs,
-                  ArrayList<Commit> parents)
+     * @param tree id of the tree of this commit
+     * @param parents ids of the parent commits */
+    Commit(ObjectStore store, String messages, Date date, String tree,
+           ArrayList<String> parents)
             throws IOException {
         if (messages == null || messages.isEmpty()
                 || messages.equals("")) {
@@ -49,36 +52,65 @@ public class Commit implements Serializable {
         }
         this.commitMessage = messages;
         this.commitDate = date;
-        this.blobsOfCommit = blobs;
         this.parentsOfCommit = parents;
-        this._id = Utils.sha1(Utils.serialize(this));
-        save();
+        this.treeOfCommit = tree;
+        this._id = ObjectStore.hash(ObjectStore.COMMIT,
+                Utils.serialize(this));
+        save(store);
     }
 
-    /** Special constructor for initial commit. */
-    public Commit() throws IOException {
+    /** Create a commit, storing it and its trees.
+     * @param store the object store of the repository
+     * @param messages commit message
+     * @param date commit date
+     * @param blobs filename to blob id mapping of this commit
+     * @param parents ids of the parent commits */
+    Commit(ObjectStore store, String messages, Date date,
+           HashMap<String, String> blobs, ArrayList<String> parents)
+            throws IOException {
+        this(store, messages, date, Tree.write(store, blobs), parents);
+        this.blobsOfCommit = blobs;
+    }
+
+    /** Special constructor for initial commit, which is stored.
+     * @param store the object store of the repository */
+    Commit(ObjectStore store) throws IOException {
         this.commitMessage = "initial commit";
         this.commitDate = new Date(0);
-        this.blobsOfCommit = new HashMap<String, Blob>();
+        this.blobsOfCommit = new HashMap<String, String>();
         this.parentsOfCommit = null;
-        this._id = Utils.sha1(Utils.serialize(this));
-        save();
+        this.treeOfCommit = Tree.write(store, blobsOfCommit);
+        this._id = ObjectStore.hash(ObjectStore.COMMIT,
+                Utils.serialize(this));
+        save(store);
     }
 
     /** Special constructor for unit test.
      * @param messages commit message
      * @param date commit date
-     * @param blobs blobs in this commit
-     * @param parents the parent commits
+     * @param blobs filename to blob id mapping of this commit
+     * @param parents ids of the parent commits
      * @param unitTest indicate that this is for unit test only */
-    public Commit(String messages, Date date, HashMap<String, Blob> blobs,
-                  ArrayList<Commit> parents, boolean unitTest)
+    public Commit(String messages, Date date, HashMap<String, String> blobs,
+                  ArrayList<String> parents, boolean unitTest)
             throws IOException {
         this.commitMessage = messages;
         this.commitDate = date;
         this.blobsOfCommit = blobs;
         this.parentsOfCommit = parents;
-        this._id = Utils.sha1(Utils.serialize(this));
+        this.treeOfCommit = Tree.write(null, blobs);
+        this._id = ObjectStore.hash(ObjectStore.COMMIT,
+                Utils.serialize(this));
+    }
+
+    /** Read the commit with id ID from STORE.
+     * @param store the object store
+     * @param id id of the commit
+     * @return the commit */
+    static Commit load(ObjectStore store, String id) {
+        Commit c = store.getObject(id, Commit.class);
+        c._id = id;
+        return c;
     }
 
     /** Get commit message.
@@ -93,15 +125,28 @@ public class Commit implements Serializable {
         return this.commitDate;
     }
 
-    /** Get blobs.
-     * @return the blobs */
-    public HashMap<String, Blob> getBlobs() {
-        return this.blobsOfCommit;
+    /** Get blobs, reading the trees of this commit unless it was just
+     * made from them.  A commit read from a store may be shared through
+     * its cache, which weighs it without its files, so they are flattened
+     * anew on each call rather than kept.
+     * @param store the object store holding the trees
+     * @return path to blob id mapping */
+    HashMap<String, String> getBlobs(ObjectStore store) {
+        if (blobsOfCommit != null) {
+            return blobsOfCommit;
+        }
+        return Tree.flatten(store, treeOfCommit);
+    }
+
+    /** Get the id of the tree of this commit.
+     * @return tree id */
+    public String getTree() {
+        return this.treeOfCommit;
     }
 
     /** Get the parents of this commit.
-     * @return the parents */
-    public ArrayList<Commit> getParents() {
+     * @return ids of the parents */
+    public ArrayList<String> getParents() {
         return this.parentsOfCommit;
     }
 
@@ -111,10 +156,9 @@ public class Commit implements Serializable {
         return _id;
     }
 
-    /** Serialize the commit. */
-    public void save() throws IOException {
-        File commitFile = new File(".gitlet/commit/" + _id);
-        commitFile.createNewFile();
-        Utils.writeObject(commitFile, this);
+    /** Store the commit; its trees are stored when they are built.
+     * @param store the object store of the repository */
+    void save(ObjectStore store) throws IOException {
+        store.putObject(ObjectStore.COMMIT, this);
     }
 }
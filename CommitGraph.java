@@ -0,0 +1,365 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The parent ids and generation number of every commit, kept in
+ * .gitlet/commit-graph so that ancestry can be answered without reading
+ * commit objects.  The generation of a root commit is 1 and that of any
+ * other commit is one more than the largest generation of its parents,
+ * so a commit can only be an ancestor of commits of greater generation.
+ * Each line of the file is a commit id, its generation and its parent
+ * ids; new commits are appended.
+ * <p>
+ * The file is read only when the graph is first asked about, so a
+ * command that only adds a commit never reads it.  A commit added
+ * before then is written with generation 0, as its parents' generations
+ * are not known, and its generation is worked out whenever the file is
+ * read, from the parents on the lines before it.
+ * @author Sara Wang
+ */
+class CommitGraph {
+
+    /** Mark of commits reachable from the first commit of a merge. */
+    private static final int FROM_FIRST = 1;
+
+    /** Mark of commits reachable from the second commit of a merge. */
+    private static final int FROM_SECOND = 2;
+
+    /** Mark of commits below a common ancestor already found. */
+    private static final int STALE = 4;
+
+    /** The file holding the graph. */
+    private final File file;
+
+    /** Parent ids of each commit, by id. */
+    private final HashMap<String, String[]> parents;
+
+    /** Generation number of each commit, by id. */
+    private final HashMap<String, Integer> generations;
+
+    /** All commit ids, in the order they were added. */
+    private final ArrayList<String> ids;
+
+    /** Lines not yet appended to the file. */
+    private final StringBuilder pending;
+
+    /** Whether the file has been read. */
+    private boolean loaded;
+
+    /** The graph kept in FILE, read when first asked about.
+     * @param file the commit-graph file */
+    CommitGraph(File file) {
+        this.file = file;
+        this.parents = new HashMap<>();
+        this.generations = new HashMap<>();
+        this.ids = new ArrayList<>();
+        this.pending = new StringBuilder();
+        this.loaded = !file.exists();
+    }
+
+    /** Reads the file, if not read yet, and then the lines added since
+     * the last save. */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        String added = pending.toString();
+        for (String text : new String[] {
+            Utils.readContentsAsString(file), added}) {
+            for (String line : text.split("\n")) {
+                if (!line.isEmpty()) {
+                    String[] fields = line.split(" ");
+                    String[] ps = Arrays.copyOfRange(fields, 2,
+                            fields.length);
+                    int generation = Integer.parseInt(fields[1]);
+                    if (!contains(fields[0])) {
+                        put(fields[0], generation == 0
+                                ? generationAbove(ps) : generation, ps);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns whether the graph holds the commit with this id.
+     * @param id a full id
+     * @return whether it is a known commit */
+    boolean contains(String id) {
+        load();
+        return parents.containsKey(id);
+    }
+
+    /** Returns the ids of all commits, oldest first.
+     * @return commit ids */
+    List<String> ids() {
+        load();
+        return Collections.unmodifiableList(ids);
+    }
+
+    /** Returns the length of the file once the commits added since the
+     * last save are appended.
+     * @return the length in bytes */
+    long length() {
+        return file.length() + pending.length();
+    }
+
+    /** Returns the ids of the commits on the lines from byte OFFSET of
+     * the file on, and of those added since the last save, reading only
+     * that part of the file.
+     * @param offset where a line of the file starts
+     * @return commit ids, oldest first */
+    List<String> idsSince(long offset) {
+        StringBuilder text = new StringBuilder();
+        if (offset < file.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                byte[] tail = new byte[(int) (raf.length() - offset)];
+                raf.seek(offset);
+                raf.readFully(tail);
+                text.append(new String(tail, StandardCharsets.UTF_8));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        text.append(pending);
+        ArrayList<String> result = new ArrayList<>();
+        for (String line : text.toString().split("\n")) {
+            if (!line.isEmpty()) {
+                result.add(line.substring(0, line.indexOf(' ')));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the parent ids of a commit.
+     * @param id id of a commit in the graph
+     * @return its parents, first parent first */
+    List<String> parentsOf(String id) {
+        load();
+        return Arrays.asList(parents.get(id));
+    }
+
+    /** Returns the generation number of a commit.
+     * @param id id of a commit in the graph
+     * @return its generation */
+    int generationOf(String id) {
+        load();
+        return generations.get(id);
+    }
+
+    /** Returns the generation of a commit with parent ids PS.
+     * @param ps ids of commits in the graph
+     * @return one more than their largest generation, or 1 if none */
+    private int generationAbove(String[] ps) {
+        int generation = 1;
+        for (String p : ps) {
+            generation = Math.max(generation, generationOf(p) + 1);
+        }
+        return generation;
+    }
+
+    /** Adds commit ID with parent ids PARENTS, all of which must already
+     * be in the graph.  If the file has not been read, the commit is
+     * only queued to be appended, and the file is left unread.
+     * @param id id of the new commit
+     * @param parentIds ids of its parents, or null for a root commit */
+    void add(String id, List<String> parentIds) {
+        String[] ps = parentIds == null ? new String[0]
+                : parentIds.toArray(new String[0]);
+        int generation = 0;
+        if (loaded) {
+            if (contains(id)) {
+                return;
+            }
+            generation = generationAbove(ps);
+            put(id, generation, ps);
+        }
+        pending.append(id).append(' ').append(generation);
+        for (String p : ps) {
+            pending.append(' ').append(p);
+        }
+        pending.append('\n');
+    }
+
+    /** Returns whether commit A is an ancestor of commit B, or B itself.
+     * The walk from B never visits commits whose generation is not
+     * greater than A's, since A cannot be reached through them.
+     * @param a id of a commit
+     * @param b id of a commit
+     * @return whether A is reachable from B */
+    boolean isAncestor(String a, String b) {
+        int floor = generationOf(a);
+        HashSet<String> visited = new HashSet<>();
+        ArrayDeque<String> fringe = new ArrayDeque<>();
+        fringe.add(b);
+        while (!fringe.isEmpty()) {
+            String id = fringe.remove();
+            if (id.equals(a)) {
+                return true;
+            }
+            if (generationOf(id) > floor && visited.add(id)) {
+                fringe.addAll(parentsOf(id));
+            }
+        }
+        return false;
+    }
+
+    /** Returns the best common ancestor of commits A and B: of the
+     * merge bases, the one of greatest generation.
+     * @param a id of a commit
+     * @param b id of a commit
+     * @return id of the merge base, or null if they share no history */
+    String mergeBase(String a, String b) {
+        String best = null;
+        for (String base : mergeBases(a, b)) {
+            if (best == null || generationOf(base) > generationOf(best)) {
+                best = base;
+            }
+        }
+        return best;
+    }
+
+    /** Returns the merge bases of commits A and B, the common ancestors
+     * that are not ancestors of other common ancestors; criss-cross
+     * merges can give more than one.  Both histories are walked at once,
+     * highest generation first, marking each commit with the sides it
+     * is reachable from, and the walk stops once every commit left to
+     * visit lies below a common ancestor, so only the history since the
+     * two sides diverged is visited.  As in git, a count of the commits
+     * left to visit that are not below one is kept as the marks change,
+     * and each commit waits in the queue at most once.
+     * @param a id of a commit
+     * @param b id of a commit
+     * @return ids of the merge bases */
+    List<String> mergeBases(String a, String b) {
+        load();
+        ArrayList<String> result = new ArrayList<>();
+        if (a.equals(b)) {
+            result.add(a);
+            return result;
+        }
+        HashMap<String, Integer> marks = new HashMap<>();
+        PriorityQueue<String> queue = new PriorityQueue<>((x, y) ->
+                generationOf(x) != generationOf(y)
+                ? generationOf(y) - generationOf(x) : x.compareTo(y));
+        HashSet<String> queued = new HashSet<>();
+        marks.put(a, FROM_FIRST);
+        marks.put(b, FROM_SECOND);
+        queue.add(a);
+        queue.add(b);
+        queued.add(a);
+        queued.add(b);
+        int fresh = 2;
+        while (fresh > 0) {
+            String id = queue.remove();
+            queued.remove(id);
+            int mark = marks.get(id);
+            if ((mark & STALE) == 0) {
+                fresh--;
+            }
+            if ((mark & (FROM_FIRST | FROM_SECOND))
+                    == (FROM_FIRST | FROM_SECOND)) {
+                if ((mark & STALE) == 0) {
+                    result.add(id);
+                }
+                mark |= STALE;
+                marks.put(id, mark);
+            }
+            for (String p : parents.get(id)) {
+                int old = marks.getOrDefault(p, 0);
+                if ((old | mark) == old) {
+                    continue;
+                }
+                marks.put(p, old | mark);
+                if (queued.add(p)) {
+                    queue.add(p);
+                    if ((mark & STALE) == 0) {
+                        fresh++;
+                    }
+                } else if ((old & STALE) == 0 && (mark & STALE) != 0) {
+                    fresh--;
+                }
+            }
+        }
+        ArrayList<String> bases = new ArrayList<>();
+        for (String candidate : result) {
+            boolean redundant = false;
+            for (String other : result) {
+                if (!other.equals(candidate)
+                        && isAncestor(candidate, other)) {
+                    redundant = true;
+                }
+            }
+            if (!redundant) {
+                bases.add(candidate);
+            }
+        }
+        return bases;
+    }
+
+    /** Records appending the commits added since the last save to the
+     * file in JOURNAL.
+     * @param journal the changes of this command */
+    void save(Journal journal) {
+        if (pending.length() == 0) {
+            return;
+        }
+        journal.append(file, file.length(),
+                pending.toString().getBytes(StandardCharsets.UTF_8));
+        pending.setLength(0);
+    }
+
+    /** Builds the graph of all commits in REPO, for repositories made
+     * before the graph was kept.
+     * @param repo the repository
+     * @param commitIds ids of all its commits */
+    void rebuild(Repository repo, List<String> commitIds) {
+        for (String start : commitIds) {
+            ArrayDeque<String> stack = new ArrayDeque<>();
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                String id = stack.peek();
+                if (contains(id)) {
+                    stack.pop();
+                    continue;
+                }
+                List<String> ps = repo.commit(id).getParents();
+                boolean ready = true;
+                if (ps != null) {
+                    for (String p : ps) {
+                        if (!contains(p)) {
+                            stack.push(p);
+                            ready = false;
+                        }
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    add(id, ps);
+                }
+            }
+        }
+    }
+
+    /** Records a commit read from the file or just added.
+     * @param id id of the commit
+     * @param generation its generation number
+     * @param ps ids of its parents */
+    private void put(String id, int generation, String[] ps) {
+        parents.put(id, ps);
+        generations.put(id, generation);
+        ids.add(id);
+    }
+}
@@ -1,83 +1,200 @@
 package gitlet;
-import java.io.Serializable;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.Collections;
 import java.util.Date;
-import java.text.Format;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 
 /**
  * Created by Sara on 12/3/17.
+ * <p>
+ * The commands of Gitlet, for use from other programs as well as from
+ * {@link Main}.  Commands return what they found instead of printing it
+ * and report errors by throwing a {@link GitletException}, so a program
+ * may run any number of them on one open repository, calling
+ * {@link #save()} to write back their changes; after an error, changes
+ * made since the last save should be dropped by closing without saving.
  *
  * @author Sara Wang
  */
-public class CommitTree implements Serializable {
+public class CommitTree implements AutoCloseable {
+
+    /** Path given to add to add every file of the working directory. */
+    public static final String ALL = "-A";
+
+    /** Characters that make a path given to add a glob pattern. */
+    private static final Pattern GLOB = Pattern.compile("[*?\\[{]");
+
+    /** How a merge turned out. */
+    public enum MergeOutcome {
+        /** The given branch was already merged; nothing changed. */
+        ANCESTOR,
+        /** The current branch was moved to the given branch. */
+        FAST_FORWARD,
+        /** A merge commit was made. */
+        MERGED,
+        /** A merge commit was made with conflict markers in some files. */
+        CONFLICT
+    }
 
     /**
-     * Hashmap of all the branches in the commit tree.
+     * The repository holding refs, the index and all objects.
      */
-    private HashMap<String, Branch> branches;
+    private Repository repo;
 
     /**
-     * Hashmap of all the commits made.
+     * Represent the current branch, read when first needed.
      */
-    private HashMap<String, Commit> commits;
+    private Branch currentBranch;
 
     /**
-     * Hashmap of commit messages in correspondance to commmit ids.
+     * Represent the head commit, read when first needed.
      */
-    private HashMap<String, ArrayList<String>> messages;
+    private Commit headCommit;
 
     /**
-     * Represent the current branch.
+     * The files of the head commit, read when first needed.
      */
-    private Branch currentBranch;
+    private HashMap<String, String> headFiles;
 
     /**
-     * Represent the head commit.
+     * A commit tree over the given repository.
+     * @param repository where all information is kept
      */
-    private Commit headCommit;
+    CommitTree(Repository repository) {
+        this.repo = repository;
+    }
 
     /**
-     * Represent the staging area.
+     * Opens the repository in the current directory, locked until it is
+     * closed.
+     * @param writable whether any command run may change the repository
+     * @return its commands
      */
-    private HashMap<String, Blob> staging;
+    public static CommitTree open(boolean writable) {
+        return new CommitTree(Repository.open(writable));
+    }
 
     /**
-     * Represent the remove area, where files are to be untracked.
+     * Opens the repository whose working directory is DIR, locked until
+     * it is closed.  Paths given to its commands are taken from the top
+     * of DIR.
+     * @param dir the working directory, holding or to hold .gitlet
+     * @param writable whether any command run may change the repository
+     * @return its commands
      */
-    private HashMap<String, Blob> remove;
+    public static CommitTree open(File dir, boolean writable) {
+        return new CommitTree(Repository.open(dir, writable));
+    }
 
     /**
-     * Represent all the split points.
+     * Returns whether the repository has been initialized.
+     * @return whether its .gitlet directory exists
      */
-    private HashMap<Commit, ArrayList<Branch>> splitPoint;
+    boolean exists() {
+        return repo.exists();
+    }
 
     /**
-     * Represent the existent remotes, name, path.
+     * Writes back the changes of the commands run since the last save,
+     * all together.
+     * @throws GitletException if a branch to change was changed by
+     *         another command since it was read
      */
-    private HashMap<String, String> remote;
+    public void save() {
+        repo.save();
+    }
 
     /**
-     * A commit tree of all information.
+     * Releases the repository, dropping any changes not saved.
      */
-    public CommitTree() {
-        this.branches = new HashMap<String, Branch>();
-        this.commits = new HashMap<String, Commit>();
-        this.messages = new HashMap<String, ArrayList<String>>();
-        this.staging = new HashMap<String, Blob>();
-        this.remove = new HashMap<String, Blob>();
-        this.splitPoint = new HashMap<Commit, ArrayList<Branch>>();
-        this.remote = new HashMap<String, String>();
+    @Override
+    public void close() {
+        repo.close();
+    }
 
+    /**
+     * Returns the current branch.
+     * @return the current branch
+     */
+    private Branch currentBranch() {
+        if (currentBranch == null) {
+            currentBranch = repo.branch(repo.currentBranch());
+        }
+        return currentBranch;
     }
 
+    /**
+     * Returns the head commit.
+     * @return the head commit
+     */
+    private Commit headCommit() {
+        if (headCommit == null) {
+            headCommit = repo.commit(currentBranch().getHead());
+        }
+        return headCommit;
+    }
+
+    /**
+     * Returns the files of commit C, a commit of this repository.  Those
+     * of the head commit are read once per command and shared, so the
+     * map returned must not be changed.
+     * @param c a commit
+     * @return filename to blob id mapping
+     */
+    public HashMap<String, String> blobsOf(Commit c) {
+        if (c != headCommit) {
+            return c.getBlobs(repo.store());
+        }
+        if (headFiles == null) {
+            headFiles = c.getBlobs(repo.store());
+        }
+        return headFiles;
+    }
+
+    /**
+     * Returns the staging area, filename to blob id.
+     * @return files staged for addition
+     */
+    private HashMap<String, String> staging() {
+        return repo.index().getStaged();
+    }
+
+    /**
+     * Returns the remove area, where files are to be untracked.
+     * @return files staged for removal
+     */
+    private HashMap<String, String> remove() {
+        return repo.index().getRemoved();
+    }
+
+    /**
+     * Returns the full id of the commit that an abbreviated id names.
+     * @param commitId an abbreviated or full commit id
+     * @return the full commit id
+     * @throws GitletException if no commit or more than one commit matches
+     */
+    private String resolveCommit(String commitId) {
+        String id = repo.resolveCommit(commitId);
+        if (id == null) {
+            throw Utils.error("No commit with that id exists.");
+        }
+        return id;
+    }
 
     /**
      * Check if there is already a remote named this.
@@ -85,7 +202,7 @@ public class CommitTree implements Serializable {
      * @param remoteName name of remote
      */
     public boolean remoteExist(String remoteName) throws IOException {
-        boolean b = remote.containsKey(remoteName);
+        boolean b = repo.remotes().containsKey(remoteName);
         return b;
     }
 
@@ -96,11 +213,10 @@ public class CommitTree implements Serializable {
      */
     public void rmRemote(String remoteName) throws IOException {
         if (!remoteExist(remoteName)) {
-            System.err.println(" A remote with that name does not exist.");
-            System.exit(0);
+            throw Utils.error(" A remote with that name does not exist.");
         }
 
-        remote.remove(remoteName);
+        repo.remotes().remove(remoteName);
     }
 
 
@@ -111,11 +227,10 @@ public class CommitTree implements Serializable {
      */
     public void push(String remoteName, String
             remoteBranchName) throws IOException {
-        String remotePath = remote.get(remoteName);
-        File remoteRepo = new File(remotePath);
+        String remotePath = repo.remotes().get(remoteName);
+        File remoteRepo = repo.workingFile(remotePath);
         if (!remoteRepo.exists()) {
-            System.err.println("Remote directory not found.");
-            System.exit(0);
+            throw Utils.error("Remote directory not found.");
         }
     }
 
@@ -130,140 +245,198 @@ public class CommitTree implements Serializable {
                           String remotePath) throws IOException {
         String path = remotePath.replaceAll("\b/",
                 java.io.File.separator);
-        remote.put(remoteName, path);
         if (remoteExist(remoteName)) {
-            System.out.println(
+            throw Utils.error(
                     " A remote with that name already exists.");
-            System.exit(0);
         }
+        repo.remotes().put(remoteName, path);
     }
 
     /**
      * Init command.
      */
     public void commitInit() throws IOException {
-        File gitlet = new File(".gitlet");
-        if (gitlet.isDirectory()) {
-            System.out.println("A gitlet version-control "
+        if (repo.exists()) {
+            throw Utils.error("A gitlet version-control "
                     + "system already exists in the current directory.");
-            System.exit(0);
         }
-        gitlet.mkdir();
-
-        File commit = new File(".gitlet" + File.separator + "commit");
-        commit.mkdir();
+        repo.create();
 
-
-        Commit init = new Commit();
-        Branch master = new Branch("master", null);
-        master.add(init);
+        Commit init = new Commit(repo.store());
+        Branch master = new Branch(Repository.DEFAULT_BRANCH, init.getId());
+        repo.addCommit(init);
+        repo.writeBranch(master);
+        repo.setCurrentBranch(master.getName());
         currentBranch = master;
         headCommit = init;
-
-        ArrayList<String> commitsWithThisMessage = new ArrayList<>();
-        commitsWithThisMessage.add(init.getId());
-
-        this.branches.put("master", master);
-        this.commits.put(init.getId(), init);
-        this.messages.put(init.getCommitMessage(), commitsWithThisMessage);
+        headFiles = null;
 
     }
 
     /**
-     * Add command.
+     * Add command.  Each of PATHS names a file, a directory, all of whose
+     * files are added, or a glob pattern matched against the paths of
+     * the files of the working directory; the single path -A adds all of
+     * them.  Paths are taken from the top of the working directory and
+     * may not lead out of it.  Ignored files are added only when named.
+     * Tracked files
+     * missing from an added directory are staged for removal.  Files are
+     * hashed and stored in parallel, and the staging area is then
+     * updated once.
      *
-     * @param filename the file to add.
-     */
-    public void add(String filename) throws IOException {
-        File addFile = new File(filename);
-        if (!addFile.exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+     * @param paths the files to add.
+     */
+    public void add(String... paths) throws IOException {
+        TreeSet<String> files = new TreeSet<>();
+        TreeSet<String> missing = new TreeSet<>();
+        Snapshot snapshot = null;
+        for (String operand : paths) {
+            String path = operand.equals(ALL) ? ALL : normalize(operand);
+            if (repo.workingFile(path).isFile()) {
+                files.add(path);
+                continue;
+            }
+            if (snapshot == null) {
+                snapshot = repo.snapshot();
+            }
+            if (!selectFiles(path, snapshot, files, missing)) {
+                throw Utils.error("File does not exist.");
+            }
         }
-        Blob toAdd = new Blob(filename);
-        if (headCommit.getBlobs() != null
-                && headCommit.getBlobs().containsKey(filename)) {
-            Blob b = headCommit.getBlobs().get(filename);
-            if (new String(b.getContent(),
-                    StandardCharsets.UTF_8).equals(new String(
-                            toAdd.getContent(), StandardCharsets.UTF_8))) {
-                if (staging.containsKey(filename)) {
-                    staging.remove(filename);
-                }
-                if (remove.containsKey(filename)) {
-                    remove.remove(filename);
-                }
+        HashMap<String, String> tracked = blobsOf(headCommit());
+        Map<String, String> ids = files.parallelStream().collect(
+                Collectors.toConcurrentMap(f -> f, f -> {
+                    String id = repo.index().hashOf(repo.workTree(), f);
+                    if (id.equals(tracked.get(f))) {
+                        return id;
+                    }
+                    return new Blob(repo.workingFile(f), id)
+                            .save(repo.store());
+                }));
+        HashMap<String, String> staging = staging();
+        HashMap<String, String> remove = remove();
+        for (String f : files) {
+            String id = ids.get(f);
+            if (id.equals(tracked.get(f))) {
+                staging.remove(f);
             } else {
-                staging.put(filename, toAdd);
+                staging.put(f, id);
+            }
+            remove.remove(f);
+        }
+        for (String f : missing) {
+            staging.remove(f);
+            if (tracked.containsKey(f)) {
+                remove.put(f, tracked.get(f));
             }
+        }
+    }
+
+    /**
+     * Returns PATH as a path from the top of the working directory, with
+     * / separators and no . or .. names.
+     * @param path a path given to a command
+     * @return the path, empty for the top itself
+     * @throws GitletException if PATH leads out of the working directory
+     *         or into the repository directory
+     */
+    private String normalize(String path) {
+        Path top = repo.workTree().toPath();
+        Path p = top.resolve(path).normalize();
+        if (!p.startsWith(top)) {
+            throw Utils.error("File is outside the working directory.");
+        }
+        if (p.startsWith(top.resolve(".gitlet"))) {
+            throw Utils.error("File is inside the repository directory.");
+        }
+        return top.relativize(p).toString().replace(File.separatorChar,
+                Tree.SEPARATOR);
+    }
+
+    /**
+     * Adds to FILES the files of SNAPSHOT that PATH, a directory, a glob
+     * pattern or -A, selects, and to MISSING the tracked or staged files
+     * it selects that are no longer in the working directory.
+     * @param path the path given to add
+     * @param snapshot the working directory
+     * @param files the files to add
+     * @param missing the files to stage for removal
+     * @return whether PATH selects any file, or names a directory or -A
+     */
+    private boolean selectFiles(String path, Snapshot snapshot,
+                                Set<String> files, Set<String> missing) {
+        Predicate<String> selects;
+        if (path.equals(ALL)) {
+            selects = f -> true;
+        } else if (repo.workingFile(path).isDirectory()) {
+            selects = f -> path.isEmpty()
+                    || f.startsWith(path + Tree.SEPARATOR);
+        } else if (GLOB.matcher(path).find()) {
+            PathMatcher m = FileSystems.getDefault().getPathMatcher(
+                    "glob:" + path);
+            selects = f -> m.matches(Paths.get(f));
         } else {
-            if (staging.containsKey(filename)) {
-                staging.replace(filename, toAdd);
+            return false;
+        }
+        int before = files.size() + missing.size();
+        for (String f : snapshot.files()) {
+            if (selects.test(f)) {
+                files.add(f);
             }
-            if (remove.containsKey(filename)) {
-                remove.remove(filename);
-                staging.put(filename, toAdd);
-            } else {
-                staging.put(filename, toAdd);
+        }
+        TreeSet<String> known = new TreeSet<>(blobsOf(headCommit())
+                .keySet());
+        known.addAll(staging().keySet());
+        for (String f : known) {
+            if (selects.test(f) && !snapshot.contains(f)) {
+                missing.add(f);
             }
         }
+        return files.size() + missing.size() > before
+                || path.equals(ALL) || repo.workingFile(path).isDirectory();
     }
 
     /**
      * Commit command.
      * @param commitMessage the commit message of the commit to be made
      * @param anotherParent another parent
+     * @return the new commit
      */
-    public void commit(String commitMessage, Commit anotherParent)
+    public Commit commit(String commitMessage, Commit anotherParent)
             throws IOException {
         if (commitMessage.equals("")) {
-            System.out.println(" Please enter a commit message.");
-            System.exit(0);
+            throw Utils.error(" Please enter a commit message.");
         }
+        HashMap<String, String> staging = staging();
+        HashMap<String, String> remove = remove();
         if (staging.isEmpty() && remove.isEmpty()) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw Utils.error("No changes added to the commit.");
         }
 
-        HashMap<String, Blob> blobs = new HashMap<>();
-
-        blobs.putAll(headCommit.getBlobs());
-
+        HashMap<String, String> changes = new HashMap<>();
         for (String removeFilename : remove.keySet()) {
-            blobs.remove(removeFilename);
-        }
-
-        for (String addFilename : staging.keySet()) {
-            if (blobs.containsKey(addFilename)) {
-                blobs.remove(addFilename);
-            }
-            blobs.put(addFilename, staging.get(addFilename));
+            changes.put(removeFilename, null);
         }
+        changes.putAll(staging);
+        String tree = Tree.update(repo.store(), headCommit().getTree(),
+                changes);
 
-        ArrayList<Commit> parents = new ArrayList<>();
+        ArrayList<String> parents = new ArrayList<>();
 
-        parents.add(headCommit);
+        parents.add(headCommit().getId());
         if (anotherParent != null) {
-            parents.add(anotherParent);
+            parents.add(anotherParent.getId());
         }
-        Date d = new Date();
-        Commit c = new Commit(commitMessage, new Date(),
-                blobs, parents);
+        Commit c = new Commit(repo.store(), commitMessage, new Date(), tree,
+                parents);
         this.headCommit = c;
-        currentBranch.add(c);
-        commits.put(c.getId(), c);
-        currentBranch.changeHead(c);
-        if (messages.containsKey(c.getCommitMessage())) {
-            messages.get(c.getCommitMessage()).add(c.getId());
-        } else {
-            ArrayList<String> temp = new ArrayList<>();
-            temp.add(c.getId());
-            messages.put(c.getCommitMessage(), temp);
-        }
+        headFiles = null;
+        repo.addCommit(c);
+        currentBranch().changeHead(c.getId());
+        repo.writeBranch(currentBranch());
         staging.clear();
         remove.clear();
-
-
+        return c;
     }
 
     /**
@@ -272,244 +445,136 @@ public class CommitTree implements Serializable {
      * @param filename the file to be removed.
      */
     public void rm(String filename) {
-
+        HashMap<String, String> staging = staging();
+        HashMap<String, String> trackedFiles = blobsOf(headCommit());
         if (!staging.containsKey(filename)
-                && !headCommit.getBlobs().containsKey(filename)) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
-        }
-
-        File f = new File(filename);
-        Blob removeBlob;
-        if (!f.exists()) {
-            removeBlob = new Blob(filename, false);
-        } else {
-            removeBlob = new Blob(filename);
+                && !trackedFiles.containsKey(filename)) {
+            throw Utils.error("No reason to remove the file.");
         }
 
         if (staging.containsKey(filename)) {
             staging.remove(filename);
         }
 
-        if (headCommit.getBlobs().containsKey(filename)) {
-            remove.put(filename, removeBlob);
-            File removedFile = new File(filename);
-            if (removedFile.exists()) {
-                removedFile.delete();
-            }
+        if (trackedFiles.containsKey(filename)) {
+            remove().put(filename, trackedFiles.get(filename));
+            repo.checkout(filename, null);
         }
 
 
     }
 
     /**
-     * Log command, to print out all previous commits.
+     * Log command, the commits from the head commit back to the initial
+     * commit, following first parents.
+     * @return the commits, newest first
      */
-    public void log() {
-
-
-        ArrayList<Commit> commitsOnCurrentBranch
-                = currentBranch.getCommits();
-
-        Boolean print = false;
-
-        for (int i = commitsOnCurrentBranch.size() - 1; i >= 0; i--) {
-            Commit temp = commitsOnCurrentBranch.get(i);
-            if (temp.getId().equals(headCommit.getId())) {
-                print = true;
-            }
-            if (!print) {
-                continue;
-            }
-
-            System.out.println("===");
-            System.out.println("commit " + temp.getId());
-
-            if (temp.getParents() != null && temp.getParents().size() > 1) {
-                ArrayList<Commit> tempParents = temp.getParents();
-                System.out.println("Merge: "
-                        + tempParents.get(0).getId().substring(0, 7) + " "
-                        + tempParents.get(1).getId().substring(0, 7));
-            }
-
-            Date time = temp.getCommitDate();
-            Format format = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
-            String printDate = format.format(time);
-            System.out.println("Date: " + printDate);
-
-            System.out.println(temp.getCommitMessage());
-            if (i > 0) {
-                System.out.println();
+    public List<Commit> log() {
+        ArrayList<Commit> result = new ArrayList<>();
+        Commit temp = headCommit();
+        while (temp != null) {
+            result.add(temp);
+            if (temp.getParents() == null) {
+                temp = null;
+            } else {
+                temp = repo.commit(temp.getParents().get(0));
             }
         }
+        return result;
     }
 
     /**
-     * Global-log command, to print out all commits made.
+     * Global-log command, all commits ever made.
+     * @return the commits, oldest first
      */
-    public void globalLog() {
-        int count = 0;
-
-        for (Commit c : commits.values()) {
-
-            System.out.println("===");
-            System.out.println("commit " + c.getId());
-
-            if (c.getParents() != null && c.getParents().size() > 1) {
-                ArrayList<Commit> tempParents = c.getParents();
-                System.out.println("Merge: "
-                        + tempParents.get(0).getId().substring(0, 8)
-                        + tempParents.get(1).getId().substring(0, 8));
-            }
-
-            Date time = c.getCommitDate();
-            Format format = new
-                    SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
-            String printDate = format.format(time);
-            System.out.println("Date: " + printDate);
-            System.out.println(c.getCommitMessage());
-            if (count < commits.size() - 1) {
-                System.out.println();
-            }
-            count++;
+    public List<Commit> globalLog() {
+        ArrayList<Commit> result = new ArrayList<>();
+        for (String id : repo.commitIds()) {
+            result.add(repo.commit(id));
         }
+        return result;
     }
 
     /**
      * Find command.
      *
      * @param commitMessage the commit message to look for.
+     * @return ids of the commits with that message
      */
-    public void find(String commitMessage) {
-        if (!messages.containsKey(commitMessage)) {
-            System.out.println("Found no commit with that message.");
-            System.exit(0);
-        } else {
-            ArrayList<String> print = messages.get(commitMessage);
-            for (int i = 0; i < print.size(); i++) {
-                System.out.println(print.get(i));
+    public List<String> find(String commitMessage) {
+        ArrayList<String> found = new ArrayList<>();
+        for (String id : repo.commitIds()) {
+            if (repo.commit(id).getCommitMessage().equals(commitMessage)) {
+                found.add(id);
             }
         }
+        if (found.isEmpty()) {
+            throw Utils.error("Found no commit with that message.");
+        }
+        return found;
     }
 
     /**
      * Status command.
+     * @return the status of the repository
      */
-    public void status() {
-        System.out.println("=== Branches ===");
-
-        ArrayList<String> printBranches = new ArrayList<>();
-        for (String e : branches.keySet()) {
-            printBranches.add(e);
-        }
-        Collections.sort(printBranches);
-        for (String p : printBranches) {
-            if (p.equals(currentBranch.getName())) {
-                System.out.print("*");
-            }
-            System.out.println(p);
-        }
-        System.out.println();
-
-        System.out.println("=== Staged Files ===");
-
-        ArrayList<String> stagedFiles = new ArrayList<>();
-        for (String e : staging.keySet()) {
-            stagedFiles.add(e);
-        }
+    public Status status() {
+        ArrayList<String> stagedFiles = new ArrayList<>(staging().keySet());
         Collections.sort(stagedFiles);
-        for (String p : stagedFiles) {
-            System.out.println(p);
-        }
-        System.out.println();
-
-        System.out.println("=== Removed Files ===");
-
-        ArrayList<String> removedFiles = new ArrayList<>();
-        for (String e : remove.keySet()) {
-            removedFiles.add(e);
-        }
+        ArrayList<String> removedFiles = new ArrayList<>(remove().keySet());
         Collections.sort(removedFiles);
-        for (String p : removedFiles) {
-            System.out.println(p);
-        }
-        System.out.println();
-
-        System.out.println(
-                "=== Modifications Not Staged For Commit ===");
-        statusModified();
-
-        System.out.println("=== Untracked Files ===");
-        statusUntracked();
+        Snapshot snapshot = repo.snapshot();
+        return new Status(repo.branchNames(), currentBranch().getName(),
+                stagedFiles, removedFiles, modifiedFiles(snapshot),
+                untrackedFiles(snapshot));
     }
 
     /**
      * For the modified files when calling status command.
-     */
-    public void statusModified() {
-        ArrayList<String> modifiedFiles = new ArrayList<>();
-        for (String filename: headCommit.getBlobs().keySet()) {
-            File f = new File(filename);
-            String trackedContent = new String(headCommit.getBlobs()
-                    .get(filename).getContent(), StandardCharsets.UTF_8);
-            if (f.exists()) {
-                String workingContent = Utils.readContentsAsString(f);
-                if (!trackedContent.equals(workingContent)) {
-                    String temp = filename + " (modified)";
-                    modifiedFiles.add(temp);
+     * @param snapshot the working directory
+     * @return filename to Status.MODIFIED or Status.DELETED mapping
+     */
+    private TreeMap<String, String> modifiedFiles(Snapshot snapshot) {
+        TreeMap<String, String> modifiedFiles = new TreeMap<>();
+        HashMap<String, String> staging = staging();
+        Set<String> changedFromHead =
+                snapshot.changed(blobsOf(headCommit()));
+        Set<String> changedFromStaged = snapshot.changed(staging);
+        for (String filename: blobsOf(headCommit()).keySet()) {
+            if (snapshot.contains(filename)) {
+                if (changedFromHead.contains(filename)) {
+                    modifiedFiles.put(filename, Status.MODIFIED);
                 }
             } else {
-                if (!remove.keySet().contains(filename)) {
-                    String temp = filename + " (deleted)";
-                    modifiedFiles.add(temp);
+                if (!remove().keySet().contains(filename)) {
+                    modifiedFiles.put(filename, Status.DELETED);
                 }
             }
         }
         for (String filename: staging.keySet()) {
-            File f = new File(filename);
-            String stagedFileContent =
-                    new String(staging.get(filename).getContent(),
-                            StandardCharsets.UTF_8);
-            if (f.exists()) {
-                String workingContent = Utils.readContentsAsString(f);
-                if (!stagedFileContent.equals(workingContent)) {
-                    if (!modifiedFiles.contains(filename)) {
-                        String temp = filename + " (modified)";
-                        modifiedFiles.add(temp);
-                    }
+            if (snapshot.contains(filename)) {
+                if (changedFromStaged.contains(filename)) {
+                    modifiedFiles.put(filename, Status.MODIFIED);
                 }
             } else {
-                if (!modifiedFiles.contains(filename)) {
-                    String temp = filename + " (deleted)";
-                    modifiedFiles.add(temp);
-                }
+                modifiedFiles.put(filename, Status.DELETED);
             }
         }
-        if (modifiedFiles == null) {
-            System.out.println();
-            return;
-        }
-        Collections.sort(modifiedFiles);
-        for (String o: modifiedFiles) {
-            System.out.println(o);
-        }
-
-        System.out.println();
-
+        return modifiedFiles;
     }
 
     /**
      * For the untracked files when calling status command.
+     * @param snapshot the working directory
+     * @return the untracked files, sorted
      */
-    public void statusUntracked() {
+    private List<String> untrackedFiles(Snapshot snapshot) {
         ArrayList<String> untrackedFiles = new ArrayList<>();
-        HashMap<String, Blob> trackedFiles = headCommit.getBlobs();
-        if (trackedFiles == null) {
-            System.out.println();
-            return;
-        }
+        HashMap<String, String> staging = staging();
+        HashMap<String, String> remove = remove();
+        HashMap<String, String> trackedFiles = blobsOf(headCommit());
 
-        for (String filename: Utils.plainFilenamesIn(".")) {
+        for (String filename: snapshot.files()) {
             if (!staging.containsKey(filename)
                     && !trackedFiles.containsKey(filename)) {
                 untrackedFiles.add(filename);
@@ -521,9 +586,7 @@ public class CommitTree implements Serializable {
         }
 
         Collections.sort(untrackedFiles);
-        for (String i: untrackedFiles) {
-            System.out.println(i);
-        }
+        return untrackedFiles;
     }
 
 
@@ -536,26 +599,16 @@ public class CommitTree implements Serializable {
             throws IOException {
         String operand = args[1];
         if (!operand.equals("--")) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw Utils.error("Incorrect operands.");
         }
         String filename = args[2];
-        if (headCommit.getBlobs() == null) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+        if (blobsOf(headCommit()) == null) {
+            throw Utils.error("File does not exist in that commit.");
         }
-        if (!headCommit.getBlobs().containsKey(filename)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+        if (!blobsOf(headCommit()).containsKey(filename)) {
+            throw Utils.error("File does not exist in that commit.");
         }
-        Blob b = headCommit.getBlobs().get(filename);
-        File f = new File(filename);
-
-        if (!f.exists()) {
-            f.createNewFile();
-        }
-
-        Utils.writeContents(f, b.getContent());
+        repo.checkout(filename, blobsOf(headCommit()).get(filename));
 
     }
 
@@ -569,36 +622,16 @@ public class CommitTree implements Serializable {
 
         String operand = args[2];
         if (!operand.equals("--")) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw Utils.error("Incorrect operands.");
         }
         String filename = args[3];
-        String commitId = args[1];
-        for (String s: commits.keySet()) {
-            if (s.substring(0, commitId.length()).equals(commitId)) {
-                commitId = s;
-                break;
-            }
-        }
+        String commitId = resolveCommit(args[1]);
 
-        if (!commits.containsKey(commitId)) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+        HashMap<String, String> files = blobsOf(repo.commit(commitId));
+        if (!files.containsKey(filename)) {
+            throw Utils.error("File does not exist in that commit.");
         }
-
-
-        Commit c = commits.get(commitId);
-        if (!c.getBlobs().containsKey(filename)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
-        }
-        Blob b = c.getBlobs().get(filename);
-        File f = new File(filename);
-
-        if (!f.exists()) {
-            f.createNewFile();
-        }
-        Utils.writeContents(f, b.getContent());
+        repo.checkout(filename, files.get(filename));
     }
 
     /**
@@ -608,55 +641,47 @@ public class CommitTree implements Serializable {
      * @param branchname given branch
      */
     public void checkOutFromBranch(String branchname) throws IOException {
-        if (!branches.containsKey(branchname)) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
+        if (!repo.hasBranch(branchname)) {
+            throw Utils.error("No such branch exists.");
         }
-        if (currentBranch.getName().equals(branchname)) {
-            System.out.println("No need to checkout the current branch.");
-            System.exit(0);
+        if (currentBranch().getName().equals(branchname)) {
+            throw Utils.error("No need to checkout the current branch.");
         }
 
-        Branch br = branches.get(branchname);
-        Commit co = br.getHead();
-        HashMap<String, Blob> checkOutFiles = co.getBlobs();
-        HashMap<String, Blob> trackedFiles = headCommit.getBlobs();
+        Branch br = repo.branch(branchname);
+        Commit co = repo.commit(br.getHead());
+        HashMap<String, String> checkOutFiles = blobsOf(co);
+        HashMap<String, String> trackedFiles = blobsOf(headCommit());
 
-        File workDir = new File(".");
-        for (String f : Utils.plainFilenamesIn(workDir)) {
+        Snapshot snapshot = repo.snapshot();
+        HashMap<String, String> untracked = new HashMap<>();
+        for (String f : snapshot.files()) {
             if (!trackedFiles.containsKey(f)
                     && checkOutFiles.containsKey(f)) {
-                Blob b = checkOutFiles.get(f);
-                Blob bb = new Blob(f);
-                if (!new String(b.getContent(), StandardCharsets.UTF_8).equals(
-                        new String(bb.getContent(), StandardCharsets.UTF_8))) {
-                    System.out.println(
-                            "There is an untracked file in "
-                                    + "the way; delete it or add it first.");
-                    System.exit(0);
-                }
+                untracked.put(f, checkOutFiles.get(f));
             }
         }
-        for (String f : Utils.plainFilenamesIn(workDir)) {
+        if (!snapshot.changed(untracked).isEmpty()) {
+            throw Utils.error(
+                    "There is an untracked file in "
+                            + "the way; delete it or add it first.");
+        }
+        for (String f : snapshot.files()) {
             if (trackedFiles.containsKey(f) && !checkOutFiles.containsKey(f)) {
-                File tf = new File(f);
-                tf.delete();
+                repo.checkout(f, null);
             }
         }
 
 
         for (String f : checkOutFiles.keySet()) {
-            File file = new File(f);
-            if (!file.exists()) {
-                file.createNewFile();
-            }
-            Blob b = checkOutFiles.get(f);
-            Utils.writeContents(file, b.getContent());
+            repo.checkout(f, checkOutFiles.get(f));
         }
 
         headCommit = co;
-        staging.clear();
+        headFiles = null;
+        staging().clear();
         currentBranch = br;
+        repo.setCurrentBranch(branchname);
 
     }
 
@@ -667,20 +692,11 @@ public class CommitTree implements Serializable {
      */
     public void branch(String branchname) {
 
-        if (branches.containsKey(branchname)) {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
+        if (repo.hasBranch(branchname)) {
+            throw Utils.error("A branch with that name already exists.");
         }
-        Branch br = new Branch(branchname, headCommit);
-        branches.put(branchname, br);
-
-        ArrayList<Branch> b = new ArrayList<>();
-        b.add(currentBranch);
-        b.add(br);
-
-        splitPoint.put(headCommit, b);
-
-        br.addAll(currentBranch);
+        Branch br = new Branch(branchname, headCommit().getId());
+        repo.writeBranch(br);
 
     }
 
@@ -690,22 +706,138 @@ public class CommitTree implements Serializable {
      * @param branchname name of the branch to remove
      */
     public void rmBranch(String branchname) {
-        if (!branches.containsKey(branchname)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+        if (!repo.hasBranch(branchname)) {
+            throw Utils.error("A branch with that name does not exist.");
         }
-        if (branches.get(branchname).equals(currentBranch)) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+        if (branchname.equals(currentBranch().getName())) {
+            throw Utils.error("Cannot remove the current branch.");
         }
-        Branch thisBranch = branches.get(branchname);
-        for (Commit c : splitPoint.keySet()) {
-            ArrayList<Branch> branchMap = splitPoint.get(c);
-            if (branchMap.contains(thisBranch)) {
-                splitPoint.remove(c);
+        repo.deleteBranch(branchname);
+    }
+
+    /**
+     * Gc command, pack all objects into one pack, storing versions of
+     * the same file as deltas against each other.
+     */
+    public void gc() {
+        HashMap<String, String> names = new HashMap<>();
+        for (String id : repo.commitIds()) {
+            for (Map.Entry<String, String> e
+                    : blobsOf(repo.commit(id)).entrySet()) {
+                names.put(e.getValue(), e.getKey());
             }
         }
-        branches.remove(branchname);
+        repo.store().repack(names);
+    }
+
+    /**
+     * Stats command, the counters of the cache of objects read from the
+     * object store, which lives as long as the process, so across every
+     * command of a batch or a daemon.
+     * @return counter name to value mapping
+     */
+    public Map<String, Long> stats() {
+        return repo.store().cache().stats();
+    }
+
+    /**
+     * Config command, show a setting of this repository.
+     * @param key name of the setting
+     * @return its value
+     */
+    public String config(String key) {
+        checkSetting(key);
+        return repo.config(key);
+    }
+
+    /**
+     * Config command, change a setting of this repository.
+     * @param key name of the setting
+     * @param value its new value
+     */
+    public void config(String key, String value) {
+        checkSetting(key);
+        if (Codec.forName(value) == null) {
+            throw Utils.error("No codec with that name exists.");
+        }
+        repo.setConfig(key, value);
+    }
+
+    /**
+     * Check that a setting with this name exists.
+     * @param key name of the setting
+     */
+    private void checkSetting(String key) {
+        if (!key.equals(Repository.CODEC)) {
+            throw Utils.error("No setting with that name exists.");
+        }
+    }
+
+    /**
+     * Diff command, the changes in the working directory that are not
+     * staged, or with CACHED, the staged changes.
+     * @param cached whether to compare the staging area with the head
+     * @return the changes as a unified diff
+     */
+    public String diff(boolean cached) {
+        HashMap<String, String> staged = stagedFiles();
+        if (cached) {
+            return diff(Diff.changes(blobsOf(headCommit()), staged));
+        }
+        StringBuilder result = new StringBuilder();
+        Snapshot snapshot = repo.snapshot();
+        Set<String> changed = snapshot.changed(staged);
+        for (String f : new TreeSet<>(staged.keySet())) {
+            if (!snapshot.contains(f)) {
+                result.append(Diff.unified(f, contentOf(staged.get(f)),
+                        null));
+            } else if (changed.contains(f)) {
+                result.append(Diff.unified(f, contentOf(staged.get(f)),
+                        Utils.readContents(repo.workingFile(f))));
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Diff command, the changes between two commits.
+     * @param from id of the older commit
+     * @param to id of the newer commit
+     * @return the changes as a unified diff
+     */
+    public String diff(String from, String to) {
+        Commit a = repo.commit(resolveCommit(from));
+        Commit b = repo.commit(resolveCommit(to));
+        return diff(Tree.diff(repo.store(), a.getTree(), b.getTree()));
+    }
+
+    /**
+     * Returns the changes to each file of CHANGES as a unified diff.
+     * @param changes path to {old blob id, new blob id} mapping
+     * @return the diff
+     */
+    private String diff(Map<String, String[]> changes) {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, String[]> e : changes.entrySet()) {
+            String[] ids = e.getValue();
+            result.append(Diff.unified(e.getKey(),
+                    ids[0] == null ? null : contentOf(ids[0]),
+                    ids[1] == null ? null : contentOf(ids[1])));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns the files the next commit would hold: those of the head
+     * commit with the staged changes applied.
+     * @return filename to blob id mapping
+     */
+    private HashMap<String, String> stagedFiles() {
+        HashMap<String, String> result =
+                new HashMap<>(blobsOf(headCommit()));
+        result.keySet().removeAll(remove().keySet());
+        result.putAll(staging());
+        return result;
     }
 
     /**
@@ -715,13 +847,9 @@ public class CommitTree implements Serializable {
      * @return bool indicating if c1 and c2 are on the same branch
      */
     public boolean sameBranch(Commit c1, Commit c2) {
-        for (Branch b: branches.values()) {
-            if (b.getCommits().contains(c1)
-                    && b.getCommits().contains(c2)) {
-                return true;
-            }
-        }
-        return false;
+        CommitGraph graph = repo.graph();
+        return graph.isAncestor(c1.getId(), c2.getId())
+                || graph.isAncestor(c2.getId(), c1.getId());
     }
 
     /**
@@ -732,60 +860,35 @@ public class CommitTree implements Serializable {
     public void
         reset(String commitId)
             throws IOException {
-        for (String s: commits.keySet()) {
-            if (s.substring(0, commitId.length()).equals(commitId)) {
-                commitId = s;
-                break;
-            }
-        }
-        if (!commits.containsKey(commitId)) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
-        }
-        HashMap<String, Blob> trackedFiles = headCommit.getBlobs();
-        List<String> workdirFiles = Utils.plainFilenamesIn(".");
+        commitId = resolveCommit(commitId);
+        HashMap<String, String> trackedFiles = blobsOf(headCommit());
+        List<String> workdirFiles =
+                repo.snapshot().files();
 
-        Commit c = commits.get(commitId);
-        HashMap<String, Blob> toCheckoutFiles = c.getBlobs();
+        Commit c = repo.commit(commitId);
+        HashMap<String, String> toCheckoutFiles = blobsOf(c);
 
         for (String f : workdirFiles) {
             if (!trackedFiles.containsKey(f)
                     && toCheckoutFiles.containsKey(f)) {
-                System.out.println("There is an untracked file "
+                throw Utils.error("There is an untracked file "
                         + "in the way; delete it or add it first.");
-                System.exit(0);
             }
         }
         for (String f : trackedFiles.keySet()) {
             if (!toCheckoutFiles.containsKey(f)) {
-                File tf = new File(f);
                 rm(f);
             }
         }
         for (String f : toCheckoutFiles.keySet()) {
-            File file = new File(f);
-            if (!file.exists()) {
-                file.createNewFile();
-            }
-            Blob b = toCheckoutFiles.get(f);
-            Utils.writeContents(file, b.getContent());
+            repo.checkout(f, toCheckoutFiles.get(f));
         }
         headCommit = c;
-        Branch master = branches.get("master");
-
-        if (master.getCommits().contains(c)) {
-            currentBranch = master;
-        } else {
-            for (Branch b: branches.values()) {
-                if (b.getCommits().contains(c)) {
-                    currentBranch = b;
-                    break;
-                }
-            }
-        }
-        currentBranch.changeHead(headCommit);
-        staging.clear();
-        remove.clear();
+        headFiles = null;
+        currentBranch().changeHead(c.getId());
+        repo.writeBranch(currentBranch());
+        staging().clear();
+        remove().clear();
     }
 
     /**
@@ -795,18 +898,19 @@ public class CommitTree implements Serializable {
      * @return bool indicating if c1 is a parent of c2
      */
     public boolean isParentOf(Commit c1, Commit c2) {
-        Branch current = currentBranch;
-        for (String br: branches.keySet()) {
-            if (branches.get(br).getCommits().contains(c1)
-                    && branches.get(br).getCommits().contains(c2)) {
-                current = branches.get(br);
-                if (current.getCommits().indexOf(c1)
-                        < current.getCommits().indexOf(c2)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return !c1.getId().equals(c2.getId())
+                && repo.graph().isAncestor(c1.getId(), c2.getId());
+    }
+
+    /**
+     * Find the split point of two commits, their latest common ancestor.
+     * @param current head commit of the current branch
+     * @param given head commit of the given branch
+     * @return the split point
+     */
+    private Commit splitPoint(Commit current, Commit given) {
+        String base = repo.graph().mergeBase(current.getId(), given.getId());
+        return base == null ? given : repo.commit(base);
     }
 
 
@@ -815,294 +919,104 @@ public class CommitTree implements Serializable {
      * @param givenBranchName the name of the branch to merge with
      */
     public void mergePre(String givenBranchName) {
-        if (!staging.isEmpty() || !remove.isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+        if (!staging().isEmpty() || !remove().isEmpty()) {
+            throw Utils.error("You have uncommitted changes.");
         }
-        if (!branches.containsKey(givenBranchName)) {
-            System.out.println("A branch with "
+        if (!repo.hasBranch(givenBranchName)) {
+            throw Utils.error("A branch with "
                     + "that name does not exist.");
-            System.exit(0);
         }
-        if (currentBranch.getName().equals(givenBranchName)) {
-            System.out.println("Cannot "
+        if (currentBranch().getName().equals(givenBranchName)) {
+            throw Utils.error("Cannot "
                     + "merge a branch with itself.");
-            System.exit(0);
         }
     }
     /**
      * Merge command.
      *
      * @param givenBranchName the name of the branch to merge with
+     * @return how the merge turned out
      */
-    public void merge(String givenBranchName) throws IOException {
+    public MergeOutcome merge(String givenBranchName) throws IOException {
 
         mergePre(givenBranchName);
-        Branch givenBranch = branches.get(givenBranchName);
+        Branch givenBranch = repo.branch(givenBranchName);
         Commit givenBranchHeadCommit =
-                givenBranch.getCommits().get(
-                givenBranch.getCommits().size() - 1);
+                repo.commit(givenBranch.getHead());
         Commit splitPointCommit =
-                givenBranchHeadCommit;
-        for (Commit temp : splitPoint.keySet()) {
-            ArrayList<Branch> b = splitPoint.get(temp);
-            if (b.contains(currentBranch) && b.contains(givenBranch)) {
-                splitPointCommit = temp;
-                break;
-            }
-        }
+                splitPoint(headCommit(), givenBranchHeadCommit);
 
-        mergeHelper1(givenBranchHeadCommit);
+        HashMap<String, String> givenFiles = blobsOf(givenBranchHeadCommit);
+        mergeHelper1(givenFiles, repo.snapshot());
 
-        if (isParentOf(givenBranchHeadCommit, headCommit)) {
-            System.out.println(
-                    "Given branch is an ancestor "
-                            + "of the current branch.");
-            return;
-        } else if (isParentOf(headCommit, givenBranchHeadCommit)) {
-            System.out.println("Current branch fast-forwarded.");
+        if (isParentOf(givenBranchHeadCommit, headCommit())) {
+            return MergeOutcome.ANCESTOR;
+        } else if (isParentOf(headCommit(), givenBranchHeadCommit)) {
             checkOutFromBranch(givenBranchName);
-            return;
+            return MergeOutcome.FAST_FORWARD;
         } else {
             String commitMessage = "Merged "
                     + givenBranchName + " into "
-                    + currentBranch.getName() + ".";
-            HashMap<String, Blob> currentBranchHeadCommitFiles
-                    = headCommit.getBlobs();
-            HashMap<String, Blob> givenBranchHeadCommitFiles
-                    = givenBranchHeadCommit.getBlobs();
-            ArrayList<String> allFiles = new ArrayList<String>();
-            allFiles.addAll(
-                    currentBranchHeadCommitFiles.keySet());
-            for (String temp
-                    : givenBranchHeadCommitFiles.keySet()) {
-                if (!allFiles.contains(temp)) {
-                    allFiles.add(temp);
-                }
-            }
-            for (String blobName : allFiles) {
-                boolean s =
-                        blobInThisCommit(splitPointCommit, blobName);
-                boolean g =
-                        blobInThisCommit(givenBranchHeadCommit, blobName);
-                boolean c =
-                        blobInThisCommit(headCommit, blobName);
-                mergeHelper2(currentBranchHeadCommitFiles, blobName,
-                        splitPointCommit, givenBranchHeadCommitFiles,
-                        givenBranchHeadCommit, s, c, g);
-            }
+                    + currentBranch().getName() + ".";
+            boolean conflict = applyMerge(Merge.plan(repo.store(),
+                    blobsOf(splitPointCommit), blobsOf(headCommit()),
+                    givenFiles));
             commit(commitMessage, givenBranchHeadCommit);
+            return conflict ? MergeOutcome.CONFLICT : MergeOutcome.MERGED;
         }
     }
 
     /**
      * Merge helper 1.
-     * @param givenBranchHeadCommit Head commit of the given branch
-     */
-    public void mergeHelper1(Commit givenBranchHeadCommit) {
-        for (String filenames: Utils.plainFilenamesIn(".")) {
-            if (givenBranchHeadCommit.getBlobs().containsKey(filenames)
-                    && !headCommit.getBlobs().containsKey(filenames)) {
-                System.out.println(
+     * @param givenFiles files of the head commit of the given branch
+     * @param snapshot the working directory
+     */
+    private void mergeHelper1(HashMap<String, String> givenFiles,
+                              Snapshot snapshot) {
+        HashMap<String, String> tracked = blobsOf(headCommit());
+        for (String filenames: snapshot.files()) {
+            if (givenFiles.containsKey(filenames)
+                    && !tracked.containsKey(filenames)) {
+                throw Utils.error(
                         "There is an untracked file in the way; "
                                 + "delete it or add it first.");
-                System.exit(0);
             }
         }
     }
 
     /**
-     * Merge helper 2.
-     * @param currentBranchHeadCommitFiles files in the current
-     *                                     branch's head commit
-     * @param blobName name of blob
-     * @param splitPointCommit commit at split point
-     * @param givenBranchHeadCommitFiles files in the given branch's head commit
-     * @param givenBranchHeadCommit given branch's head commit
-     * @param s bool s
-     * @param c bool c
-     * @param g bool g
-     * @throws IOException
-     */
-    public void mergeHelper2(HashMap<String, Blob> currentBranchHeadCommitFiles,
-                             String blobName, Commit splitPointCommit,
-                             HashMap<String, Blob> givenBranchHeadCommitFiles,
-                             Commit givenBranchHeadCommit,
-                             Boolean s, Boolean c,
-                             Boolean g) throws IOException {
-        {
-            if (g && c) {
-                Blob gg =
-                        givenBranchHeadCommitFiles.get(blobName);
-                Blob cc =
-                        currentBranchHeadCommitFiles.get(blobName);
-                if (sameContent(gg, cc)) {
-                    return;
-                } else {
-                    if (s) {
-                        if (blobModifiedAfterSplitPoint(splitPointCommit,
-                                blobName, headCommit)) {
-                            if (blobModifiedAfterSplitPoint(
-                                    splitPointCommit,
-                                    blobName, givenBranchHeadCommit)) {
-                                System.out.println("Encountered "
-                                        + "a merge conflict.");
-                                File blob = new File(blobName);
-                                if (!blob.exists()) {
-                                    blob.createNewFile();
-                                }
-                                Utils.writeContents(blob, "<<<<<<< HEAD\n",
-                                        new String(cc.getContent(),
-                                                StandardCharsets.UTF_8),
-                                        "=======\n",
-                                        new String(gg.getContent(),
-                                                StandardCharsets.UTF_8),
-                                        ">>>>>>>\n");
-
-                                add(blobName);
-                            } else {
-                                return;
-                            }
-                        } else {
-                            if (blobModifiedAfterSplitPoint(
-                                    splitPointCommit,
-                                    blobName, givenBranchHeadCommit)) {
-                                checkOutFromSomeCommit("checkout",
-                                        givenBranchHeadCommit.getId(),
-                                        "--", blobName);
-                                add(blobName);
-                            } else {
-                                return;
-                            }
-                        }
-                    } else {
-                        checkOutFromSomeCommit("checkout",
-                                givenBranchHeadCommit.getId(),
-                                "--", blobName);
-                        add(blobName);
-                    }
-                }
-            } else {
-                mergeHelper3(currentBranchHeadCommitFiles, blobName,
-                        splitPointCommit, givenBranchHeadCommitFiles,
-                        givenBranchHeadCommit, s, c);
-            }
-        }
-    }
-    /**
-     * Merge Helper 3.
-     * @param currentBranchHeadCommitFiles current branch head commit files
-     * @param blobName name of blob
-     * @param splitPointCommit commit at split point
-     * @param givenBranchHeadCommitFiles given branch head commit file
-     * @param givenBranchHeadCommit head file of given branch
-     * @param s boolean s
-     * @param c bollean c
-     * @throws IOException
-     */
-    public void mergeHelper3(HashMap<String, Blob> currentBranchHeadCommitFiles,
-                             String blobName, Commit splitPointCommit,
-                             HashMap<String, Blob> givenBranchHeadCommitFiles,
-                             Commit givenBranchHeadCommit,
-                             Boolean s, Boolean c) throws IOException {
-        if (s) {
-            if (c) {
-                Blob cc =
-                        currentBranchHeadCommitFiles.get(blobName);
-                if (blobModifiedAfterSplitPoint(splitPointCommit,
-                        blobName, headCommit)) {
-                    System.out.println("Encountered "
-                            + "a merge conflict.");
-                    File blob = new File(blobName);
-                    if (!blob.exists()) {
-                        blob.createNewFile();
-                    }
-                    Utils.writeContents(blob, "<<<<<<< HEAD\n",
-                            new String(cc.getContent(),
-                                    StandardCharsets.UTF_8),
-                            "=======\n", ">>>>>>>\n");
-                    add(blobName);
-                } else {
-                    rm(blobName);
-                }
-            } else {
-                Blob gg =
-                        givenBranchHeadCommitFiles.get(blobName);
-                if (blobModifiedAfterSplitPoint(splitPointCommit,
-                        blobName, givenBranchHeadCommit)) {
-                    System.out.println("Encountered "
-                            + "a merge conflict.");
-                    File blob = new File(blobName);
-                    if (!blob.exists()) {
-                        blob.createNewFile();
-                    }
-                    Utils.writeContents(blob, "<<<<<<< HEAD\n",
-                            "=======\n", gg.getContent(),
-                            ">>>>>>>\n");
-                    add(blobName);
-                } else {
-                    return;
-                }
-            }
-        } else {
-            if (c) {
-                return;
+     * Applies the outcome of a merge to the working directory and the
+     * staging area.  The working files are written together when the
+     * command's changes are saved, the files to write in parallel.
+     * @param plan path to result mapping, as made by Merge.plan
+     * @return whether any file holds conflict markers
+     */
+    private boolean applyMerge(Map<String, Merge.Result> plan) {
+        HashMap<String, String> tracked = blobsOf(headCommit());
+        boolean conflict = false;
+        for (Map.Entry<String, Merge.Result> e : plan.entrySet()) {
+            String f = e.getKey();
+            String blob = e.getValue().blob();
+            repo.checkout(f, blob);
+            if (blob == null) {
+                staging().remove(f);
+                remove().put(f, tracked.get(f));
             } else {
-                Blob newBlob =
-                        givenBranchHeadCommitFiles.get(blobName);
-                checkOutFromSomeCommit("checkout",
-                        givenBranchHeadCommit.getId(),
-                        "--", blobName);
-                add(blobName);
+                remove().remove(f);
+                staging().put(f, blob);
             }
+            conflict |= e.getValue().conflict();
         }
-    }
-        /**
-         * Check if blobname is a blob in this commit.
-         * @param thisCommit some commit
-         * @param blobname name of a blob
-         * @return bool indicating if blob with blob name is in commit
-         */
-    public boolean blobInThisCommit(
-            Commit thisCommit, String blobname) {
-        HashMap<String, Blob> b = thisCommit.getBlobs();
-        return b.containsKey(blobname);
-    }
-
-    /**
-     * Check if blob is modifed after the split.
-     * @param splitPointCommit split point of two branches
-     * @param blobname name of a blob
-     * @param me the current branch
-     * @return boolean indicating if blob
-     * with blobname has been modified
-     */
-    public boolean blobModifiedAfterSplitPoint(
-            Commit splitPointCommit,
-            String blobname, Commit me) {
-        Blob blobInSplitPointCommit =
-                splitPointCommit.getBlobs().get(blobname);
-        Blob myBlob = me.getBlobs().get(blobname);
-        String contentInSplitPoint = new
-                String(blobInSplitPointCommit.getContent(),
-                StandardCharsets.UTF_8);
-        String myContent = new String(myBlob.getContent(),
-                StandardCharsets.UTF_8);
-        return !contentInSplitPoint.equals(myContent);
+        return conflict;
     }
 
     /**
-     * Check if two blobs have the same content.
-     * @param blob1 blob1
-     * @param blob2 blob2
-     * @return boolean indicating if blob1 and 2 are the same.
+     * Read the content of a stored blob.
+     * @param blobId id of the blob
+     * @return the content of the blob
      */
-    public boolean sameContent(Blob blob1, Blob blob2) {
-        String content1 = new String(blob1.getContent(),
-                StandardCharsets.UTF_8);
-        String content2 = new String(blob2.getContent(),
-                StandardCharsets.UTF_8);
-        return content1.equals(content2);
+    public byte[] contentOf(String blobId) {
+        return repo.store().get(blobId);
     }
 
 
@@ -0,0 +1,64 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Comparison of contents without decoding them.  Blobs are compared by
+ * id first, since equal ids mean equal contents; only when one side has
+ * no id yet are the bytes themselves compared, a buffer at a time with
+ * Arrays.mismatch, stopping at the first difference.
+ * @author Sara Wang
+ */
+class Contents {
+
+    /** Returns whether two blobs have the same contents.
+     * @param blob1 id of blob1, or null if there is none
+     * @param blob2 id of blob2, or null if there is none
+     * @return whether the contents are equal */
+    static boolean sameBlob(String blob1, String blob2) {
+        return blob1 == null ? blob2 == null : blob1.equals(blob2);
+    }
+
+    /** Returns whether FILE holds the contents of the blob with id ID,
+     * without hashing the file.  Files of a different size are not read.
+     * @param store the object store
+     * @param id id of a blob
+     * @param file a plain file
+     * @return whether the contents are equal */
+    static boolean sameFile(ObjectStore store, String id, File file) {
+        if (store.sizeOf(id) != file.length()) {
+            return false;
+        }
+        try (InputStream in1 = store.open(id);
+             InputStream in2 = new FileInputStream(file)) {
+            return sameStream(in1, in2);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns whether IN1 and IN2 hold the same bytes, reading both
+     * only up to the first difference.
+     * @param in1 a stream
+     * @param in2 another stream
+     * @return whether the contents are equal */
+    static boolean sameStream(InputStream in1, InputStream in2)
+            throws IOException {
+        byte[] buf1 = new byte[ObjectStore.BUFFER_SIZE];
+        byte[] buf2 = new byte[ObjectStore.BUFFER_SIZE];
+        while (true) {
+            int n1 = in1.readNBytes(buf1, 0, buf1.length);
+            int n2 = in2.readNBytes(buf2, 0, buf2.length);
+            if (n1 != n2 || Arrays.mismatch(buf1, 0, n1, buf2, 0, n2) != -1) {
+                return false;
+            }
+            if (n1 < buf1.length) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A server that runs the commands of a repository in one long-lived
+ * process, so that they pay neither for starting a JVM nor for loading
+ * classes and reopening the repository.  The {@link Repository} is kept
+ * open across commands, with the branches, index, commit graph and
+ * settings it read and the objects cached by its store, and is read
+ * again only when its files change.  It listens on a Unix domain
+ * socket in .gitlet, where {@link Main} looks for it before running a
+ * command itself; a command sent to it is run just as it would be run
+ * in the client's own process, in the same directory, and everything it
+ * prints is sent back, in frames each holding a piece of the standard
+ * output or of the standard error, so the client prints each where the
+ * command would have.  Commands are run one at a time, each under the
+ * repository lock as usual, so commands run by other processes and by
+ * the daemon still keep apart.
+ * @author Sara Wang
+ */
+class Daemon {
+
+    /** Name of the socket file in the repository directory. */
+    static final String SOCKET = "daemon.sock";
+
+    /** Argument of the daemon command that stops a running daemon. */
+    static final String STOP = "stop";
+
+    /** Frame holding a piece of the standard output. */
+    private static final int OUT = 1;
+
+    /** Frame holding a piece of the standard error. */
+    private static final int ERR = 2;
+
+    /** Returns the socket of the repository in the current directory.
+     * @return the socket file */
+    private static File socket() {
+        return Utils.join(".gitlet", SOCKET);
+    }
+
+    /** Runs command ARGS in the daemon of the repository in the current
+     * directory, if one is running, copying what it prints to
+     * System.out and System.err.
+     * @param args the command
+     * @return whether a daemon ran it */
+    static boolean forward(String... args) {
+        SocketChannel ch = connect();
+        if (ch == null) {
+            return false;
+        }
+        try (ch) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(ch)));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(
+                    Channels.newInputStream(ch));
+            while (true) {
+                int stream;
+                try {
+                    stream = in.readByte();
+                } catch (EOFException excp) {
+                    break;
+                }
+                byte[] piece = new byte[in.readInt()];
+                in.readFully(piece);
+                (stream == ERR ? System.err : System.out).write(piece);
+            }
+            System.out.flush();
+            System.err.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return true;
+    }
+
+    /** Returns a connection to the daemon, or null if none is running.
+     * @return the connection */
+    private static SocketChannel connect() {
+        File f = socket();
+        if (!f.exists()) {
+            return null;
+        }
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(f.toPath()));
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Serves the repository in the current directory until stopped. */
+    static void serve() {
+        if (!new File(".gitlet").isDirectory()) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        }
+        SocketChannel other = connect();
+        if (other != null) {
+            try {
+                other.close();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            throw Utils.error("A daemon is already running.");
+        }
+        Repository repo = Repository.open(false);
+        repo.close();
+        File f = socket();
+        f.delete();
+        try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(f.toPath()));
+            f.deleteOnExit();
+            boolean serving = true;
+            while (serving) {
+                SocketChannel ch = server.accept();
+                try (ch) {
+                    serving = handle(ch, repo);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            f.delete();
+        }
+    }
+
+    /** Runs the command sent over CH on REPO with System.out and
+     * System.err sent back over CH.
+     * @param ch a connection from a client
+     * @param repo the repository, not locked
+     * @return false if the command stops the daemon */
+    private static boolean handle(SocketChannel ch, Repository repo)
+            throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(ch));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+        DataOutputStream raw = new DataOutputStream(new BufferedOutputStream(
+                Channels.newOutputStream(ch)));
+        PrintStream out = new PrintStream(new Frames(raw, OUT), false,
+                StandardCharsets.UTF_8);
+        PrintStream err = new PrintStream(new Frames(raw, ERR), false,
+                StandardCharsets.UTF_8);
+        PrintStream console = System.out;
+        PrintStream errors = System.err;
+        System.setOut(out);
+        System.setErr(err);
+        try {
+            if (args.length > 0 && args[0].equals("daemon")) {
+                if (args.length == 2 && args[1].equals(STOP)) {
+                    return false;
+                }
+                throw Utils.error("A daemon is already running.");
+            }
+            repo.store().refresh();
+            Main.run(repo, args);
+        } catch (GitletException excp) {
+            out.println(excp.getMessage());
+        } catch (RuntimeException excp) {
+            out.println(excp);
+        } finally {
+            System.setOut(console);
+            System.setErr(errors);
+            out.flush();
+            err.flush();
+            raw.flush();
+        }
+        return true;
+    }
+
+    /** A stream sending what is written to it as frames of one kind. */
+    private static class Frames extends OutputStream {
+
+        /** Where the frames are sent. */
+        private final DataOutputStream out;
+
+        /** Kind of the frames, OUT or ERR. */
+        private final int stream;
+
+        /** A stream sending frames of kind STREAM to OUT.
+         * @param out the connection
+         * @param stream OUT or ERR */
+        Frames(DataOutputStream out, int stream) {
+            this.out = out;
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            out.writeByte(stream);
+            out.writeInt(len);
+            out.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Binary deltas between two versions of an object.  A delta holds the
+ * sizes of the base and of the result, then a list of instructions,
+ * each either copying a range of the base or inserting new bytes.  A
+ * byte with the high bit set starts a copy and is followed by the offset
+ * and length of the range; any other nonzero byte is the number of
+ * literal bytes that follow.  Numbers are written seven bits a byte, low
+ * bits first.
+ * @author Sara Wang
+ */
+class Delta {
+
+    /** Length of the blocks of the base that copies are found from. */
+    static final int BLOCK = 16;
+
+    /** Most bytes one insert instruction can hold. */
+    private static final int MAX_INSERT = 127;
+
+    /** Marks an instruction as a copy. */
+    private static final int COPY = 0x80;
+
+    /** Returns the delta that turns BASE into TARGET.  Every block of
+     * the base is indexed by hash; the target is scanned for those
+     * blocks and each match is extended as far as it goes in both
+     * directions, with whatever falls between matches inserted.
+     * @param base the old version
+     * @param target the new version
+     * @return the delta */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeNumber(out, base.length);
+        writeNumber(out, target.length);
+        int blocks = base.length / BLOCK;
+        int mask = Integer.highestOneBit(Math.max(1, blocks) * 2) - 1;
+        int[] table = new int[mask + 1];
+        Arrays.fill(table, -1);
+        for (int i = blocks - 1; i >= 0; i--) {
+            table[hash(base, i * BLOCK) & mask] = i * BLOCK;
+        }
+        int pending = 0;
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            int from = blocks == 0 ? -1 : table[hash(target, i) & mask];
+            if (from < 0 || Arrays.mismatch(base, from, from + BLOCK,
+                    target, i, i + BLOCK) != -1) {
+                i++;
+                continue;
+            }
+            int len = BLOCK;
+            while (from + len < base.length && i + len < target.length
+                    && base[from + len] == target[i + len]) {
+                len++;
+            }
+            while (i > pending && from > 0
+                    && base[from - 1] == target[i - 1]) {
+                i--;
+                from--;
+                len++;
+            }
+            insert(out, target, pending, i);
+            out.write(COPY);
+            writeNumber(out, from);
+            writeNumber(out, len);
+            i += len;
+            pending = i;
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE.
+     * @param base the version the delta was made from
+     * @param delta a delta made by create
+     * @return the new version */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        if (readNumber(delta, pos) != base.length) {
+            throw Utils.error("Delta does not apply to this base.");
+        }
+        byte[] result = new byte[(int) readNumber(delta, pos)];
+        int n = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++] & 0xff;
+            if ((op & COPY) != 0) {
+                int from = (int) readNumber(delta, pos);
+                int len = (int) readNumber(delta, pos);
+                System.arraycopy(base, from, result, n, len);
+                n += len;
+            } else if (op != 0) {
+                System.arraycopy(delta, pos[0], result, n, op);
+                pos[0] += op;
+                n += op;
+            } else {
+                throw Utils.error("Corrupt delta.");
+            }
+        }
+        if (n != result.length) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return result;
+    }
+
+    /** Writes N to OUT seven bits a byte, low bits first, with the high
+     * bit of each byte but the last set.
+     * @param out the stream
+     * @param n a nonnegative number */
+    static void writeNumber(ByteArrayOutputStream out, long n) {
+        while (n >= COPY) {
+            out.write((int) (n & 0x7f) | COPY);
+            n >>>= 7;
+        }
+        out.write((int) n);
+    }
+
+    /** Reads a number written by writeNumber from BUF, starting at
+     * POS[0] and leaving POS[0] just after it.
+     * @param buf the bytes
+     * @param pos a one-element array holding the position
+     * @return the number */
+    static long readNumber(byte[] buf, int[] pos) {
+        long n = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = buf[pos[0]++] & 0xff;
+            n |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & COPY) != 0);
+        return n;
+    }
+
+    /** Writes insert instructions for BUF[FROM..TO) to OUT.
+     * @param out the delta
+     * @param buf the target
+     * @param from start of the bytes to insert
+     * @param to end of the bytes to insert */
+    private static void insert(ByteArrayOutputStream out, byte[] buf,
+                               int from, int to) {
+        while (from < to) {
+            int n = Math.min(MAX_INSERT, to - from);
+            out.write(n);
+            out.write(buf, from, n);
+            from += n;
+        }
+    }
+
+    /** Returns a hash of the BLOCK bytes of BUF starting at FROM.
+     * @param buf the bytes
+     * @param from start of the block
+     * @return the hash */
+    private static int hash(byte[] buf, int from) {
+        int h = 0;
+        for (int i = from; i < from + BLOCK; i++) {
+            h = h * 31 + buf[i];
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,385 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Differences between two versions of the tracked files, and between
+ * two versions of one file.  Two sets of files are compared by walking
+ * their sorted paths in step, so a path found on both sides under the
+ * same blob id is passed over without reading the blob.  Two texts are
+ * compared line by line with Myers' algorithm in its linear space form:
+ * the middle snake of the shortest edit script is found by searching
+ * forward from the start and backward from the end at once, and the two
+ * halves on either side of it are compared in turn.
+ * @author Sara Wang
+ */
+class Diff {
+
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** Number of leading bytes looked at to tell whether data is text. */
+    private static final int BINARY_PROBE = 8000;
+
+    /** Returns the paths that differ between A and B, walking the two
+     * in sorted order.
+     * @param a path to blob id mapping
+     * @param b path to blob id mapping
+     * @return path to {blob id in A, blob id in B} mapping, sorted, with
+     *         null for a file missing from one side */
+    static TreeMap<String, String[]> changes(Map<String, String> a,
+                                             Map<String, String> b) {
+        TreeMap<String, String[]> result = new TreeMap<>();
+        Iterator<Map.Entry<String, String>> ia =
+                new TreeMap<>(a).entrySet().iterator();
+        Iterator<Map.Entry<String, String>> ib =
+                new TreeMap<>(b).entrySet().iterator();
+        Map.Entry<String, String> ea = ia.hasNext() ? ia.next() : null;
+        Map.Entry<String, String> eb = ib.hasNext() ? ib.next() : null;
+        while (ea != null || eb != null) {
+            int c = ea == null ? 1 : eb == null ? -1
+                    : ea.getKey().compareTo(eb.getKey());
+            if (c < 0) {
+                result.put(ea.getKey(), new String[] {ea.getValue(), null});
+            } else if (c > 0) {
+                result.put(eb.getKey(), new String[] {null, eb.getValue()});
+            } else if (!Contents.sameBlob(ea.getValue(), eb.getValue())) {
+                result.put(ea.getKey(),
+                        new String[] {ea.getValue(), eb.getValue()});
+            }
+            if (c <= 0) {
+                ea = ia.hasNext() ? ia.next() : null;
+            }
+            if (c >= 0) {
+                eb = ib.hasNext() ? ib.next() : null;
+            }
+        }
+        return result;
+    }
+
+    /** Returns whether DATA looks like text rather than binary data,
+     * which it does unless its first bytes hold a zero byte.
+     * @param data the contents of a file
+     * @return whether it is text */
+    static boolean isText(byte[] data) {
+        for (int i = 0; i < Math.min(data.length, BINARY_PROBE); i++) {
+            if (data[i] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the lines of DATA, each with its line terminator; the
+     * last line lacks one if DATA does not end with a newline.
+     * @param data the contents of a file
+     * @return its lines */
+    static String[] lines(byte[] data) {
+        ArrayList<String> result = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == '\n') {
+                result.add(new String(data, start, i + 1 - start,
+                        StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        if (start < data.length) {
+            result.add(new String(data, start, data.length - start,
+                    StandardCharsets.UTF_8));
+        }
+        return result.toArray(new String[0]);
+    }
+
+    /** Returns a shortest list of changes turning the lines A into the
+     * lines B.  Each change is {start in A, end in A, start in B, end in
+     * B}: lines A[start..end) are replaced by B[start..end), either range
+     * possibly empty.  Changes are in order and never touch each other.
+     * @param a the old lines
+     * @param b the new lines
+     * @return the changes */
+    static List<int[]> edits(String[] a, String[] b) {
+        HashMap<String, Integer> ids = new HashMap<>();
+        int[] x = new int[a.length];
+        int[] y = new int[b.length];
+        for (int i = 0; i < a.length; i++) {
+            x[i] = ids.computeIfAbsent(a[i], k -> ids.size());
+        }
+        for (int j = 0; j < b.length; j++) {
+            y[j] = ids.computeIfAbsent(b[j], k -> ids.size());
+        }
+        return edits(x, y);
+    }
+
+    /** Returns a shortest list of changes turning the lines numbered A
+     * into the lines numbered B, where equal lines have equal numbers.
+     * The changes are as for {@link #edits(String[], String[])}.
+     * @param a numbers of the old lines
+     * @param b numbers of the new lines
+     * @return the changes */
+    static List<int[]> edits(int[] a, int[] b) {
+        boolean[] deleted = new boolean[a.length];
+        boolean[] inserted = new boolean[b.length];
+        new Myers(a, b, deleted, inserted).compare(0, a.length, 0, b.length);
+
+        List<int[]> result = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && j < b.length
+                    && !deleted[i] && !inserted[j]) {
+                i++;
+                j++;
+                continue;
+            }
+            int i0 = i;
+            int j0 = j;
+            while (i < a.length && deleted[i]) {
+                i++;
+            }
+            while (j < b.length && inserted[j]) {
+                j++;
+            }
+            result.add(new int[] {i0, i, j0, j});
+        }
+        return result;
+    }
+
+    /** Returns the differences between two versions of the file at PATH
+     * as a unified diff, as git prints it.
+     * @param path path of the file
+     * @param a the old contents, or null if the file is new
+     * @param b the new contents, or null if the file is deleted
+     * @return the diff, empty if the contents are equal */
+    static String unified(String path, byte[] a, byte[] b) {
+        if (a != null && b != null && Arrays.equals(a, b)) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder();
+        out.append("diff --git a/").append(path).append(" b/").append(path)
+                .append('\n');
+        if (a == null) {
+            out.append("new file\n");
+        } else if (b == null) {
+            out.append("deleted file\n");
+        }
+        byte[] oldData = a == null ? new byte[0] : a;
+        byte[] newData = b == null ? new byte[0] : b;
+        if (!isText(oldData) || !isText(newData)) {
+            out.append("Binary files ").append(a == null ? "/dev/null"
+                    : "a/" + path).append(" and ").append(b == null
+                    ? "/dev/null" : "b/" + path).append(" differ\n");
+            return out.toString();
+        }
+        String[] x = lines(oldData);
+        String[] y = lines(newData);
+        List<int[]> edits = edits(x, y);
+        if (edits.isEmpty()) {
+            return out.toString();
+        }
+        out.append("--- ").append(a == null ? "/dev/null" : "a/" + path)
+                .append('\n');
+        out.append("+++ ").append(b == null ? "/dev/null" : "b/" + path)
+                .append('\n');
+        for (int h = 0; h < edits.size();) {
+            int last = h;
+            while (last + 1 < edits.size() && edits.get(last + 1)[0]
+                    - edits.get(last)[1] <= 2 * CONTEXT) {
+                last++;
+            }
+            hunk(out, x, y, edits.subList(h, last + 1));
+            h = last + 1;
+        }
+        return out.toString();
+    }
+
+    /** Appends to OUT one hunk of a unified diff of X and Y, showing
+     * EDITS and the lines around them.
+     * @param out where to write
+     * @param x the old lines
+     * @param y the new lines
+     * @param edits changes close enough to share a hunk */
+    private static void hunk(StringBuilder out, String[] x, String[] y,
+                             List<int[]> edits) {
+        int[] first = edits.get(0);
+        int[] last = edits.get(edits.size() - 1);
+        int aFrom = Math.max(0, first[0] - CONTEXT);
+        int aTo = Math.min(x.length, last[1] + CONTEXT);
+        int bFrom = first[2] - (first[0] - aFrom);
+        int bTo = last[3] + (aTo - last[1]);
+        out.append("@@ -").append(range(aFrom, aTo - aFrom)).append(" +")
+                .append(range(bFrom, bTo - bFrom)).append(" @@\n");
+        int i = aFrom;
+        for (int[] e : edits) {
+            line(out, ' ', x, i, e[0]);
+            line(out, '-', x, e[0], e[1]);
+            line(out, '+', y, e[2], e[3]);
+            i = e[1];
+        }
+        line(out, ' ', x, i, aTo);
+    }
+
+    /** Returns the range of COUNT lines starting at index FROM as a hunk
+     * header shows it.
+     * @param from index of the first line
+     * @param count number of lines
+     * @return the range */
+    private static String range(int from, int count) {
+        if (count == 1) {
+            return Integer.toString(from + 1);
+        }
+        return (count == 0 ? from : from + 1) + "," + count;
+    }
+
+    /** Appends LINES[from..to) to OUT, each after MARK.
+     * @param out where to write
+     * @param mark the character starting each line
+     * @param lines the lines
+     * @param from index of the first line
+     * @param to index after the last line */
+    private static void line(StringBuilder out, char mark, String[] lines,
+                             int from, int to) {
+        for (int i = from; i < to; i++) {
+            out.append(mark).append(lines[i]);
+            if (!lines[i].endsWith("\n")) {
+                out.append("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /** The state of one comparison of two sequences of line numbers. */
+    private static class Myers {
+
+        /** The old lines. */
+        private final int[] a;
+
+        /** The new lines. */
+        private final int[] b;
+
+        /** Marks the lines of A not kept. */
+        private final boolean[] deleted;
+
+        /** Marks the lines of B not taken from A. */
+        private final boolean[] inserted;
+
+        /** Furthest x reached on each diagonal searching forward. */
+        private final int[] forward;
+
+        /** Furthest distance from the end reached on each diagonal
+         *  searching backward. */
+        private final int[] backward;
+
+        /** A comparison of A and B, marking lines in DELETED and
+         * INSERTED.
+         * @param a the old lines
+         * @param b the new lines
+         * @param deleted where to mark the lines of A not kept
+         * @param inserted where to mark the lines of B that are new */
+        Myers(int[] a, int[] b, boolean[] deleted, boolean[] inserted) {
+            this.a = a;
+            this.b = b;
+            this.deleted = deleted;
+            this.inserted = inserted;
+            int size = a.length + b.length + 5;
+            this.forward = new int[size];
+            this.backward = new int[size];
+        }
+
+        /** Marks the changes between A[aLo..aHi) and B[bLo..bHi).
+         * @param aLo start in A
+         * @param aHi end in A
+         * @param bLo start in B
+         * @param bHi end in B */
+        void compare(int aLo, int aHi, int bLo, int bHi) {
+            while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+                aLo++;
+                bLo++;
+            }
+            while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+                aHi--;
+                bHi--;
+            }
+            if (aLo == aHi) {
+                for (int j = bLo; j < bHi; j++) {
+                    inserted[j] = true;
+                }
+            } else if (bLo == bHi) {
+                for (int i = aLo; i < aHi; i++) {
+                    deleted[i] = true;
+                }
+            } else {
+                int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+                compare(aLo, snake[0], bLo, snake[1]);
+                compare(snake[2], aHi, snake[3], bHi);
+            }
+        }
+
+        /** Returns the middle snake of a shortest edit script turning
+         * A[aLo..aHi) into B[bLo..bHi), neither range empty.
+         * @param aLo start in A
+         * @param aHi end in A
+         * @param bLo start in B
+         * @param bHi end in B
+         * @return {x, y} where the snake starts and {x, y} where it ends */
+        private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+            int n = aHi - aLo;
+            int m = bHi - bLo;
+            int delta = n - m;
+            boolean odd = (delta & 1) != 0;
+            int max = (n + m + 1) / 2;
+            int off = max + 1;
+            forward[off + 1] = 0;
+            backward[off + 1] = 0;
+            for (int d = 0; d <= max; d++) {
+                for (int k = -d; k <= d; k += 2) {
+                    int x = k == -d || k != d
+                            && forward[off + k - 1] < forward[off + k + 1]
+                            ? forward[off + k + 1] : forward[off + k - 1] + 1;
+                    int y = x - k;
+                    int x0 = x;
+                    int y0 = y;
+                    while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                        x++;
+                        y++;
+                    }
+                    forward[off + k] = x;
+                    int back = delta - k;
+                    if (odd && back >= -(d - 1) && back <= d - 1
+                            && x + backward[off + back] >= n) {
+                        return new int[] {aLo + x0, bLo + y0,
+                            aLo + x, bLo + y};
+                    }
+                }
+                for (int k = -d; k <= d; k += 2) {
+                    int x = k == -d || k != d
+                            && backward[off + k - 1] < backward[off + k + 1]
+                            ? backward[off + k + 1]
+                            : backward[off + k - 1] + 1;
+                    int y = x - k;
+                    int x0 = x;
+                    int y0 = y;
+                    while (x < n && y < m
+                            && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                        x++;
+                        y++;
+                    }
+                    backward[off + k] = x;
+                    int fwd = delta - k;
+                    if (!odd && fwd >= -d && fwd <= d
+                            && x + forward[off + fwd] >= n) {
+                        return new int[] {aHi - x, bHi - y,
+                            aHi - x0, bHi - y0};
+                    }
+                }
+            }
+            throw new IllegalStateException("No middle snake found.");
+        }
+    }
+}
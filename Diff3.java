@@ -0,0 +1,278 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Three-way merge of the lines of a file.  Both versions are compared
+ * with their common ancestor, and changes that touch no lines changed
+ * by the other side are taken as they are.  Where changes from the two
+ * sides overlap or meet, the lines of the ancestor they cover form one
+ * chunk; if both sides made the same change it is taken once, and
+ * otherwise only that chunk is written between conflict markers.
+ * Lines are found and compared as ranges of the bytes of each version,
+ * never decoded into strings, and the result is written straight out.
+ * The versions may be buffers mapped from files, so that large files
+ * are read in place rather than copied into memory.
+ * @author Sara Wang
+ */
+class Diff3 {
+
+    /** Marker starting the current branch's side of a conflict. */
+    static final String OURS = "<<<<<<< HEAD\n";
+
+    /** Marker between the two sides of a conflict. */
+    static final String SEPARATOR = "=======\n";
+
+    /** Marker ending the given branch's side of a conflict. */
+    static final String THEIRS = ">>>>>>>\n";
+
+    /** Writes to OUT the merge of the changes OURS and THEIRS each make
+     * to BASE.
+     * @param base the common ancestor
+     * @param ours the version of the current branch
+     * @param theirs the version of the given branch
+     * @param out where to write the result
+     * @return whether any chunk conflicts */
+    static boolean merge(byte[] base, byte[] ours, byte[] theirs,
+                         OutputStream out) throws IOException {
+        return merge(ByteBuffer.wrap(base), ByteBuffer.wrap(ours),
+                ByteBuffer.wrap(theirs), Channels.newChannel(out));
+    }
+
+    /** Writes to OUT the merge of the changes OURS and THEIRS each make
+     * to BASE, each version being the bytes from position 0 up to the
+     * limit of its buffer.
+     * @param base the common ancestor
+     * @param ours the version of the current branch
+     * @param theirs the version of the given branch
+     * @param out where to write the result
+     * @return whether any chunk conflicts */
+    static boolean merge(ByteBuffer base, ByteBuffer ours, ByteBuffer theirs,
+                         WritableByteChannel out) throws IOException {
+        Lines o = new Lines(base);
+        Lines a = new Lines(ours);
+        Lines b = new Lines(theirs);
+        number(o, a, b);
+        List<int[]> ea = Diff.edits(o.ids, a.ids);
+        List<int[]> eb = Diff.edits(o.ids, b.ids);
+        boolean conflict = false;
+        int pos = 0;
+        int da = 0;
+        int db = 0;
+        int ia = 0;
+        int ib = 0;
+        while (ia < ea.size() || ib < eb.size()) {
+            int lo = ib == eb.size() || ia < ea.size()
+                    && ea.get(ia)[0] <= eb.get(ib)[0]
+                    ? ea.get(ia)[0] : eb.get(ib)[0];
+            int hi = lo;
+            int ja = ia;
+            int jb = ib;
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                for (; ja < ea.size() && ea.get(ja)[0] <= hi; ja++) {
+                    hi = Math.max(hi, ea.get(ja)[1]);
+                    grew = true;
+                }
+                for (; jb < eb.size() && eb.get(jb)[0] <= hi; jb++) {
+                    hi = Math.max(hi, eb.get(jb)[1]);
+                    grew = true;
+                }
+            }
+            o.writeTo(out, pos, lo);
+            int aLo = lo + da;
+            int bLo = lo + db;
+            da += growth(ea, ia, ja);
+            db += growth(eb, ib, jb);
+            int aHi = hi + da;
+            int bHi = hi + db;
+            if (ja == ia) {
+                b.writeTo(out, bLo, bHi);
+            } else if (jb == ib || Arrays.equals(a.ids, aLo, aHi,
+                    b.ids, bLo, bHi)) {
+                a.writeTo(out, aLo, aHi);
+            } else {
+                conflict = true;
+                write(out, OURS);
+                a.writeTo(out, aLo, aHi);
+                write(out, SEPARATOR);
+                b.writeTo(out, bLo, bHi);
+                write(out, THEIRS);
+            }
+            pos = hi;
+            ia = ja;
+            ib = jb;
+        }
+        o.writeTo(out, pos, o.size());
+        return conflict;
+    }
+
+    /** Writes MARKER to OUT.
+     * @param out where to write
+     * @param marker a conflict marker */
+    private static void write(WritableByteChannel out, String marker)
+            throws IOException {
+        writeFully(out, ByteBuffer.wrap(
+                marker.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** Writes all of BYTES to OUT.
+     * @param out where to write
+     * @param bytes the bytes */
+    private static void writeFully(WritableByteChannel out, ByteBuffer bytes)
+            throws IOException {
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+    }
+
+    /** Returns how many lines longer EDITS[from..to) make a file.
+     * @param edits changes as returned by Diff.edits
+     * @param from index of the first change
+     * @param to index after the last change
+     * @return lines added less lines removed */
+    private static int growth(List<int[]> edits, int from, int to) {
+        int n = 0;
+        for (int[] e : edits.subList(from, to)) {
+            n += (e[3] - e[2]) - (e[1] - e[0]);
+        }
+        return n;
+    }
+
+    /** Numbers the lines of TEXTS, giving equal lines equal numbers.
+     * @param texts the texts to number */
+    private static void number(Lines... texts) {
+        HashMap<Line, Integer> numbers = new HashMap<>();
+        for (Lines t : texts) {
+            for (int i = 0; i < t.size(); i++) {
+                t.ids[i] = numbers.computeIfAbsent(new Line(t, i),
+                        k -> numbers.size());
+            }
+        }
+    }
+
+    /** The lines of some bytes. */
+    private static class Lines {
+
+        /** The bytes. */
+        private final ByteBuffer data;
+
+        /** Where each line starts, followed by the length of DATA. */
+        private final int[] starts;
+
+        /** Number of each line; equal lines have equal numbers. */
+        private final int[] ids;
+
+        /** The lines of DATA, each ending after a newline except perhaps
+         * the last.
+         * @param data the bytes */
+        Lines(ByteBuffer data) {
+            this.data = data;
+            int length = data.limit();
+            int n = 0;
+            for (int i = 0; i < length; i++) {
+                if (data.get(i) == '\n') {
+                    n++;
+                }
+            }
+            if (length > 0 && data.get(length - 1) != '\n') {
+                n++;
+            }
+            this.starts = new int[n + 1];
+            int k = 1;
+            for (int i = 0; i < length; i++) {
+                if (data.get(i) == '\n' && k < n) {
+                    starts[k++] = i + 1;
+                }
+            }
+            starts[n] = length;
+            this.ids = new int[n];
+        }
+
+        /** Returns the number of lines.
+         * @return number of lines */
+        int size() {
+            return ids.length;
+        }
+
+        /** Writes lines FROM up to TO to OUT.
+         * @param out where to write
+         * @param from index of the first line
+         * @param to index after the last line */
+        void writeTo(WritableByteChannel out, int from, int to)
+                throws IOException {
+            writeFully(out, bytes(from, to));
+        }
+
+        /** Returns the bytes of lines FROM up to TO.
+         * @param from index of the first line
+         * @param to index after the last line
+         * @return a buffer sharing the bytes */
+        ByteBuffer bytes(int from, int to) {
+            return data.slice(starts[from], starts[to] - starts[from]);
+        }
+    }
+
+    /** One line of a text, as a key comparing its bytes. */
+    private static class Line {
+
+        /** The text holding it. */
+        private final Lines text;
+
+        /** Its index. */
+        private final int index;
+
+        /** Hash of its bytes. */
+        private final int hash;
+
+        /** Line I of TEXT.
+         * @param text a text
+         * @param i index of a line */
+        Line(Lines text, int i) {
+            this.text = text;
+            this.index = i;
+            int h = 1;
+            for (int k = start(); k < end(); k++) {
+                h = 31 * h + text.data.get(k);
+            }
+            this.hash = h;
+        }
+
+        /** Returns where the line starts.
+         * @return index of its first byte */
+        private int start() {
+            return text.starts[index];
+        }
+
+        /** Returns where the line ends.
+         * @return index after its last byte */
+        private int end() {
+            return text.starts[index + 1];
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Line)) {
+                return false;
+            }
+            Line other = (Line) obj;
+            return hash == other.hash
+                    && text.bytes(index, index + 1).equals(
+                            other.text.bytes(other.index, other.index + 1));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
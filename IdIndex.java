@@ -0,0 +1,194 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A sorted index of object ids for resolving abbreviated ids.  Like the
+ * fanout table of a git pack index, it records where the ids starting
+ * with each possible first byte begin, so a lookup binary-searches only
+ * the ids sharing the first byte of the abbreviation.
+ * <p>
+ * An index may be kept in a file, which is mapped into memory when read,
+ * so a lookup reads only the ids it compares.  The file starts with
+ * MAGIC and a number its writer records, saying how much of the source
+ * of the ids it covers, then the fanout table, then the raw ids.
+ * @author Sara Wang
+ */
+class IdIndex {
+
+    /** First four bytes of an index file. */
+    private static final int MAGIC = 0x47434958;
+
+    /** Number of possible values of the first byte of an id. */
+    private static final int FANOUT = 256;
+
+    /** Length of a raw id in bytes. */
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Length of the magic number, the count covered and the fanout. */
+    private static final int HEADER = 4 + 8 + 4 * (FANOUT + 1);
+
+    /** The raw ids, sorted. */
+    private final ByteBuffer ids;
+
+    /** Entry B is the position of the first id whose first byte is at
+     *  least B; entry FANOUT is the number of ids. */
+    private final int[] fanout;
+
+    /** How much of the source of its ids the index covers. */
+    private final long covered;
+
+    /** An index of IDS.
+     * @param allIds full ids of the objects */
+    IdIndex(Collection<String> allIds) {
+        this(ByteBuffer.wrap(encode(allIds, 0)));
+    }
+
+    /** The index encoded in DATA.
+     * @param data an encoded index */
+    private IdIndex(ByteBuffer data) {
+        this.covered = data.getLong(4);
+        this.fanout = new int[FANOUT + 1];
+        for (int b = 0; b <= FANOUT; b++) {
+            fanout[b] = data.getInt(12 + 4 * b);
+        }
+        this.ids = data.duplicate().position(HEADER).slice();
+    }
+
+    /** Returns the index kept in F, or null if there is none.
+     * @param f an index file
+     * @return the index */
+    static IdIndex read(File f) {
+        if (!f.isFile()) {
+            return null;
+        }
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (data.limit() < HEADER || data.getInt(0) != MAGIC) {
+            return null;
+        }
+        return new IdIndex(data);
+    }
+
+    /** Returns the contents of an index file holding IDS.
+     * @param allIds full ids of the objects
+     * @param covered how much of the source of the ids they cover
+     * @return the encoded index */
+    static byte[] encode(Collection<String> allIds, long covered) {
+        String[] sorted = allIds.toArray(new String[0]);
+        Arrays.sort(sorted);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                HEADER + sorted.length * ID_BYTES);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeLong(covered);
+            int pos = 0;
+            for (int b = 0; b < FANOUT; b++) {
+                out.writeInt(pos);
+                while (pos < sorted.length && firstByte(sorted[pos]) == b) {
+                    pos++;
+                }
+            }
+            out.writeInt(sorted.length);
+            for (String id : sorted) {
+                out.write(Pack.toRaw(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Returns how much of the source of its ids this index covers, as
+     * recorded when it was written.
+     * @return the number recorded, or 0 if it was built in memory */
+    long covered() {
+        return covered;
+    }
+
+    /** Returns the only id starting with PREFIX.
+     * @param prefix an abbreviated or full id
+     * @return the full id, or null if no id starts with PREFIX
+     * @throws GitletException if more than one id starts with PREFIX */
+    String resolve(String prefix) {
+        prefix = prefix.toLowerCase();
+        if (prefix.isEmpty() || prefix.length() > Utils.UID_LENGTH
+                || !prefix.matches("[0-9a-f]+")) {
+            return null;
+        }
+        int lo, hi;
+        if (prefix.length() == 1) {
+            int nibble = Character.digit(prefix.charAt(0), 16);
+            lo = fanout[nibble * 16];
+            hi = fanout[nibble * 16 + 16];
+        } else {
+            int b = firstByte(prefix);
+            lo = fanout[b];
+            hi = fanout[b + 1];
+        }
+        int pos = lo;
+        for (int top = hi; pos < top;) {
+            int mid = (pos + top) >>> 1;
+            if (compare(mid, prefix) < 0) {
+                pos = mid + 1;
+            } else {
+                top = mid;
+            }
+        }
+        if (pos >= hi || compare(pos, prefix) != 0) {
+            return null;
+        }
+        if (pos + 1 < hi && compare(pos + 1, prefix) == 0) {
+            throw Utils.error("Ambiguous commit id %s.", prefix);
+        }
+        return idAt(pos);
+    }
+
+    /** Compares the id at POS with PREFIX, over the length of PREFIX.
+     * @param pos position of an id
+     * @param prefix lower case hexadecimal digits
+     * @return less than, equal to or greater than 0 as the id sorts
+     *         before PREFIX, starts with it, or sorts after it */
+    private int compare(int pos, String prefix) {
+        for (int i = 0; i < prefix.length(); i++) {
+            int b = ids.get(pos * ID_BYTES + i / 2) & 0xff;
+            int digit = i % 2 == 0 ? b >> 4 : b & 0xf;
+            int d = digit - Character.digit(prefix.charAt(i), 16);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the id at POS.
+     * @param pos position of an id
+     * @return the full id */
+    private String idAt(int pos) {
+        byte[] raw = new byte[ID_BYTES];
+        ids.get(pos * ID_BYTES, raw);
+        return Pack.toHex(raw);
+    }
+
+    /** Returns the value of the first byte of ID.
+     * @param id an id of at least two hexadecimal digits
+     * @return the first byte */
+    private static int firstByte(String id) {
+        return Integer.parseInt(id.substring(0, 2), 16);
+    }
+}
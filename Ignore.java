@@ -0,0 +1,126 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+
+/**
+ * The patterns of .gitletignore, naming working files that are never
+ * listed as untracked.  Each line is a glob; blank lines and lines
+ * starting with # are skipped.  A pattern ending with / matches only
+ * directories.  A pattern holding any other / is matched against the
+ * whole path from the top of the working directory, and one without is
+ * matched against the last name of the path, at any depth.  An ignored
+ * directory is not walked at all.  The .gitlet directory is always
+ * ignored.
+ * @author Sara Wang
+ */
+class Ignore {
+
+    /** Name of the file holding the patterns. */
+    static final String FILE = ".gitletignore";
+
+    /** Name of the repository directory. */
+    private static final String REPOSITORY = ".gitlet";
+
+    /** Patterns matched against the last name of a path. */
+    private final ArrayList<PathMatcher> names;
+
+    /** Patterns matched against the whole path. */
+    private final ArrayList<PathMatcher> paths;
+
+    /** Patterns matched against the last name of a directory. */
+    private final ArrayList<PathMatcher> dirNames;
+
+    /** Patterns matched against the whole path of a directory. */
+    private final ArrayList<PathMatcher> dirPaths;
+
+    /** The patterns of the ignore file in the working directory DIR.
+     * @param dir the working directory */
+    Ignore(File dir) {
+        this.names = new ArrayList<>();
+        this.paths = new ArrayList<>();
+        this.dirNames = new ArrayList<>();
+        this.dirPaths = new ArrayList<>();
+        File f = new File(dir, FILE);
+        if (!f.isFile()) {
+            return;
+        }
+        FileSystem fs = FileSystems.getDefault();
+        for (String line : Utils.readContentsAsString(f).split("\n")) {
+            String pattern = line.trim();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            boolean dirOnly = pattern.endsWith("/");
+            if (dirOnly) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            boolean anchored = pattern.indexOf('/') >= 0;
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            PathMatcher m = fs.getPathMatcher("glob:" + pattern);
+            if (dirOnly) {
+                (anchored ? dirPaths : dirNames).add(m);
+            } else {
+                (anchored ? paths : names).add(m);
+            }
+        }
+    }
+
+    /** Returns whether the file at PATH is ignored.
+     * @param path path of a file, from the top of the working directory
+     * @return whether it is ignored */
+    boolean ignoresFile(String path) {
+        return matches(path, names, paths) || inIgnoredDir(path);
+    }
+
+    /** Returns whether the directory at PATH is ignored, so that nothing
+     * under it need be looked at.
+     * @param path path of a directory, from the top of the working
+     *             directory
+     * @return whether it is ignored */
+    boolean ignoresDir(String path) {
+        return path.equals(REPOSITORY) || matches(path, names, paths)
+                || matches(path, dirNames, dirPaths);
+    }
+
+    /** Returns whether a directory holding PATH is ignored.
+     * @param path path of a file
+     * @return whether it lies in an ignored directory */
+    private boolean inIgnoredDir(String path) {
+        for (int i = path.indexOf('/'); i >= 0;
+             i = path.indexOf('/', i + 1)) {
+            if (ignoresDir(path.substring(0, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns whether PATH matches a pattern of NAMEPATTERNS by its last
+     * name or a pattern of PATHPATTERNS as a whole.
+     * @param path a path
+     * @param namePatterns patterns of last names
+     * @param pathPatterns patterns of whole paths
+     * @return whether it matches */
+    private static boolean matches(String path,
+                                   ArrayList<PathMatcher> namePatterns,
+                                   ArrayList<PathMatcher> pathPatterns) {
+        File f = new File(path);
+        for (PathMatcher m : namePatterns) {
+            if (m.matches(f.toPath().getFileName())) {
+                return true;
+            }
+        }
+        for (PathMatcher m : pathPatterns) {
+            if (m.matches(f.toPath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
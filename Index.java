@@ -0,0 +1,179 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The staging area, kept in .gitlet/index between commands.  It also
+ * caches the size, modification time, inode and blob id of every working
+ * file that has been hashed, so that a file whose stat data has not
+ * changed is never read again.
+ * @author Sara Wang
+ */
+public class Index implements Serializable {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1234571L;
+
+    /** A file modified less than this many milliseconds before it was
+     *  hashed could change again without its modification time changing,
+     *  so its cached id is not trusted. */
+    static final long RACY_WINDOW = 2000;
+
+    /** Files staged for addition, filename to blob id. */
+    private HashMap<String, String> staged;
+
+    /** Files staged for removal, filename to blob id in the head commit. */
+    private HashMap<String, String> removed;
+
+    /** Stat data and blob id of working files, by filename. Files may
+     *  be hashed from several threads at once. */
+    private ConcurrentHashMap<String, Entry> entries;
+
+    /** An empty staging area. */
+    public Index() {
+        this.staged = new HashMap<>();
+        this.removed = new HashMap<>();
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    /** Returns the files staged for addition.
+     * @return filename to blob id mapping */
+    public HashMap<String, String> getStaged() {
+        return staged;
+    }
+
+    /** Returns the files staged for removal.
+     * @return filename to blob id mapping */
+    public HashMap<String, String> getRemoved() {
+        return removed;
+    }
+
+    /** Returns the blob id of the working file FILENAME, hashing it only
+     * if its stat data changed since it was last hashed.  Safe to call
+     * from several threads.
+     * @param dir the working directory
+     * @param filename name of an existing plain file under DIR
+     * @return the blob id of its content */
+    String hashOf(File dir, String filename) {
+        String id = cachedId(dir, filename);
+        if (id == null) {
+            long now = System.currentTimeMillis();
+            File f = new File(dir, filename);
+            BasicFileAttributes attrs = stat(f);
+            id = ObjectStore.hashFile(f);
+            entries.put(filename, new Entry(attrs, id, now));
+        }
+        return id;
+    }
+
+    /** Returns the blob id of the working file FILENAME if its stat data
+     * shows it unchanged since it was last hashed, without reading it.
+     * @param dir the working directory
+     * @param filename name of an existing plain file under DIR
+     * @return the blob id, or null if it is not known */
+    String cachedId(File dir, String filename) {
+        Entry e = entries.get(filename);
+        if (e != null && e.matches(stat(new File(dir, filename)))) {
+            return e.id;
+        }
+        return null;
+    }
+
+    /** Returns whether the working file FILENAME holds the contents of
+     * the blob BLOBID.  Ids are compared if the file's id is cached;
+     * otherwise the bytes are compared directly, and a file found equal
+     * is recorded as having that id.  Safe to call from several threads.
+     * @param dir the working directory
+     * @param filename name of an existing plain file under DIR
+     * @param blobId id of a blob
+     * @param store the object store holding the blob
+     * @return whether the contents are equal */
+    boolean matches(File dir, String filename, String blobId,
+                    ObjectStore store) {
+        String id = cachedId(dir, filename);
+        if (id != null) {
+            return Contents.sameBlob(id, blobId);
+        }
+        long now = System.currentTimeMillis();
+        File f = new File(dir, filename);
+        BasicFileAttributes attrs = stat(f);
+        if (!Contents.sameFile(store, blobId, f)) {
+            return false;
+        }
+        entries.put(filename, new Entry(attrs, blobId, now));
+        return true;
+    }
+
+    /** Forgets the stat data of every file that is neither staged nor
+     * in SNAPSHOT, so that files deleted from the working directory do
+     * not stay in the index for good.
+     * @param snapshot a snapshot of the working directory */
+    void prune(Snapshot snapshot) {
+        entries.keySet().removeIf(path -> !staged.containsKey(path)
+                && !removed.containsKey(path) && !snapshot.contains(path));
+    }
+
+    /** Returns the stat data of F.
+     * @param f a file
+     * @return its attributes */
+    private static BasicFileAttributes stat(File f) {
+        try {
+            return Files.readAttributes(f.toPath(),
+                    BasicFileAttributes.class);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** The stat data of a working file when it was hashed. */
+    private static class Entry implements Serializable {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1234570L;
+
+        /** Size in bytes. */
+        private final long size;
+
+        /** Modification time in milliseconds. */
+        private final long mtime;
+
+        /** Inode and device, or null where the platform has none. */
+        private final String inode;
+
+        /** Blob id of the content. */
+        private final String id;
+
+        /** Whether the file was hashed too soon after it was modified. */
+        private final boolean racy;
+
+        /** Stat data ATTRS of a file with blob id ID, hashed at HASHEDAT.
+         * @param attrs attributes of the file
+         * @param id blob id of the content
+         * @param hashedAt time the file was read */
+        Entry(BasicFileAttributes attrs, String id, long hashedAt) {
+            this.size = attrs.size();
+            this.mtime = attrs.lastModifiedTime().toMillis();
+            this.inode = attrs.fileKey() == null ? null
+                    : attrs.fileKey().toString();
+            this.id = id;
+            this.racy = mtime + RACY_WINDOW > hashedAt;
+        }
+
+        /** Returns whether the file is known to be unchanged.
+         * @param attrs current attributes of the file
+         * @return whether the cached id can be used */
+        boolean matches(BasicFileAttributes attrs) {
+            String key = attrs.fileKey() == null ? null
+                    : attrs.fileKey().toString();
+            return !racy && size == attrs.size()
+                    && mtime == attrs.lastModifiedTime().toMillis()
+                    && (inode == null ? key == null : inode.equals(key));
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * The changes one command makes to the files of a repository and to the
+ * working directory, made all together or not at all.  The changes are
+ * first written to a journal file, which is synced to disk and then
+ * renamed into place; only then are they made.  Every change can be
+ * made again with the same result, so if a command is killed partway
+ * through, the next command to open the repository finds the journal and
+ * makes its changes once more before doing anything else.  A journal
+ * that never got renamed into place is simply discarded, since none of
+ * its changes were made.  The journal is the only file synced, and a
+ * set of changes that is a single rename is made without one.
+ * <p>
+ * Each file of the repository is replaced through a temporary file and
+ * an atomic rename, so it is always either its old or its new version.
+ * Working files are written from blobs already in the object store.
+ * Paths are recorded relative to the directory holding the repository
+ * directory, so a journal is made again in the right place whatever the
+ * current directory of the command that finds it.
+ * @author Sara Wang
+ */
+class Journal {
+
+    /** Name of the journal file in the repository directory. */
+    static final String FILE = "journal";
+
+    /** First bytes of a journal. */
+    private static final int MAGIC = 0x474a524e;
+
+    /** Replaces a file of the repository. */
+    private static final int WRITE = 1;
+
+    /** Deletes a file of the repository. */
+    private static final int DELETE = 2;
+
+    /** Writes to a file of the repository from an offset on. */
+    private static final int APPEND = 3;
+
+    /** Sets a working file to the contents of a blob. */
+    private static final int CHECKOUT = 4;
+
+    /** Deletes a working file. */
+    private static final int REMOVE = 5;
+
+    /** The repository directory. */
+    private final File root;
+
+    /** The directory holding ROOT, against which paths are recorded. */
+    private final File workTree;
+
+    /** Object store holding the blobs of checked-out files. */
+    private final ObjectStore store;
+
+    /** The changes recorded so far, encoded. */
+    private final ByteArrayOutputStream log;
+
+    /** Stream writing to LOG. */
+    private final DataOutputStream out;
+
+    /** Number of changes recorded. */
+    private int count;
+
+    /** Whether any change recorded is not a single rename. */
+    private boolean needsJournal;
+
+    /** A set of changes to the repository in ROOT.
+     * @param root the repository directory
+     * @param store the object store */
+    Journal(File root, ObjectStore store) {
+        this.root = root;
+        this.workTree = root.getAbsoluteFile().toPath().normalize()
+                .getParent().toFile();
+        this.store = store;
+        this.log = new ByteArrayOutputStream();
+        this.out = new DataOutputStream(log);
+    }
+
+    /** Records replacing F with CONTENTS.
+     * @param f a file of the repository
+     * @param contents its new contents */
+    void write(File f, byte[] contents) {
+        record(WRITE, f);
+        writeBytes(contents);
+    }
+
+    /** Records deleting F.
+     * @param f a file of the repository */
+    void delete(File f) {
+        record(DELETE, f);
+    }
+
+    /** Records writing CONTENTS to F at OFFSET, dropping anything after
+     * OFFSET.
+     * @param f a file of the repository
+     * @param offset where to write
+     * @param contents the bytes to write */
+    void append(File f, long offset, byte[] contents) {
+        record(APPEND, f);
+        try {
+            out.writeLong(offset);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        writeBytes(contents);
+        needsJournal = true;
+    }
+
+    /** Records setting the working file F to the contents of the blob
+     * with id BLOB, or deleting it if BLOB is null.
+     * @param f a working file
+     * @param blob id of a blob, or null */
+    void checkout(File f, String blob) {
+        record(blob == null ? REMOVE : CHECKOUT, f);
+        if (blob != null) {
+            try {
+                out.writeUTF(blob);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        needsJournal = true;
+    }
+
+    /** Makes every change recorded, journaling them first unless they
+     * amount to a single rename. */
+    void commit() {
+        if (count == 0) {
+            return;
+        }
+        byte[] changes = log.toByteArray();
+        if (count == 1 && !needsJournal) {
+            replay(changes, count);
+            return;
+        }
+        File journal = persist(changes);
+        replay(changes, count);
+        journal.delete();
+    }
+
+    /** Writes CHANGES, the encoded changes, to the journal file.
+     * @param changes the changes recorded
+     * @return the journal file */
+    private File persist(byte[] changes) {
+        File journal = new File(root, FILE);
+        File tmp = new File(root, FILE + ".tmp");
+        try (FileOutputStream f = new FileOutputStream(tmp)) {
+            DataOutputStream header = new DataOutputStream(f);
+            CRC32 crc = new CRC32();
+            crc.update(changes);
+            header.writeInt(MAGIC);
+            header.writeInt(count);
+            header.writeLong(crc.getValue());
+            header.write(changes);
+            header.flush();
+            f.getFD().sync();
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        move(tmp, journal);
+        syncDirectory(root);
+        return journal;
+    }
+
+    /** Makes the changes of a journal left in ROOT by a command that
+     * did not finish, and removes it.
+     * @param root the repository directory
+     * @param store the object store */
+    static void recover(File root, ObjectStore store) {
+        new File(root, FILE + ".tmp").delete();
+        File journal = new File(root, FILE);
+        if (!journal.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Utils.readContents(journal)))) {
+            if (in.readInt() != MAGIC) {
+                throw Utils.error("Corrupt journal.");
+            }
+            int n = in.readInt();
+            long sum = in.readLong();
+            byte[] changes = in.readAllBytes();
+            CRC32 crc = new CRC32();
+            crc.update(changes);
+            if (crc.getValue() != sum) {
+                throw Utils.error("Corrupt journal.");
+            }
+            new Journal(root, store).replay(changes, n);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        journal.delete();
+    }
+
+    /** Makes the first N changes encoded in CHANGES, in order, except
+     * that each run of working files to check out is written in
+     * parallel.
+     * @param changes the encoded changes
+     * @param n their number */
+    private void replay(byte[] changes, int n) {
+        ArrayList<Change> list = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(changes))) {
+            for (int i = 0; i < n; i++) {
+                list.add(new Change(in, workTree));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (int i = 0; i < n;) {
+            int j = i + 1;
+            if (list.get(i).kind == CHECKOUT) {
+                while (j < n && list.get(j).kind == CHECKOUT) {
+                    j++;
+                }
+            }
+            list.subList(i, j).parallelStream().forEach(this::apply);
+            i = j;
+        }
+    }
+
+    /** Makes change C.
+     * @param c a change */
+    private void apply(Change c) {
+        switch (c.kind) {
+        case WRITE:
+            replace(c.file, c.data);
+            break;
+        case DELETE:
+            c.file.delete();
+            break;
+        case APPEND:
+            writeAt(c.file, c.offset, c.data);
+            break;
+        case CHECKOUT:
+            File parent = c.file.getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            store.copyTo(c.blob, c.file);
+            break;
+        case REMOVE:
+            removeWorkingFile(c.file);
+            break;
+        default:
+            throw Utils.error("Corrupt journal.");
+        }
+    }
+
+    /** Starts recording a change of this KIND to F.
+     * @param kind kind of change
+     * @param f the file changed */
+    private void record(int kind, File f) {
+        String path = workTree.toPath()
+                .relativize(f.getAbsoluteFile().toPath().normalize())
+                .toString().replace(File.separatorChar, '/');
+        try {
+            out.writeByte(kind);
+            out.writeUTF(path);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        count++;
+        if (count > 1) {
+            needsJournal = true;
+        }
+    }
+
+    /** Records the length of BYTES and then BYTES.
+     * @param bytes the bytes */
+    private void writeBytes(byte[] bytes) {
+        try {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Reads bytes recorded by writeBytes from IN.
+     * @param in the stream
+     * @return the bytes */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] result = new byte[in.readInt()];
+        in.readFully(result);
+        return result;
+    }
+
+    /** Replaces F with CONTENTS through a temporary file in the
+     * repository directory, so that F is never seen half written.
+     * @param f the file
+     * @param contents its new contents */
+    private void replace(File f, byte[] contents) {
+        File tmp;
+        try {
+            tmp = File.createTempFile("tmp", null, root);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeContents(tmp, contents);
+        move(tmp, f);
+    }
+
+    /** Writes CONTENTS to F at OFFSET and cuts F off after them.
+     * @param f the file
+     * @param offset where to write
+     * @param contents the bytes */
+    private static void writeAt(File f, long offset, byte[] contents) {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.setLength(offset);
+            raf.seek(offset);
+            raf.write(contents);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Deletes the working file F and then each directory holding it
+     * that is left empty.
+     * @param f a working file */
+    private static void removeWorkingFile(File f) {
+        if (!f.delete()) {
+            return;
+        }
+        File dir = f.getParentFile();
+        while (dir != null && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Renames FROM to TO, replacing TO atomically.
+     * @param from the file to rename
+     * @param to its new name */
+    private static void move(File from, File to) {
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            from.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Syncs the entries of directory DIR to disk, where the system
+     * allows it, so that a rename within it is not lost.
+     * @param dir a directory */
+    static void syncDirectory(File dir) {
+        try (FileChannel ch = FileChannel.open(dir.toPath(),
+                StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** One change, as read back from the journal. */
+    private static class Change {
+
+        /** Kind of change. */
+        private final int kind;
+
+        /** The file changed. */
+        private final File file;
+
+        /** Bytes to write, if any. */
+        private byte[] data;
+
+        /** Where to write them, for an APPEND. */
+        private long offset;
+
+        /** Id of the blob to check out, for a CHECKOUT. */
+        private String blob;
+
+        /** The next change encoded in IN, to a file under WORKTREE.
+         * @param in the encoded changes
+         * @param workTree the directory paths are relative to */
+        Change(DataInputStream in, File workTree) throws IOException {
+            kind = in.readByte();
+            file = new File(workTree, in.readUTF());
+            if (kind == APPEND) {
+                offset = in.readLong();
+            }
+            if (kind == WRITE || kind == APPEND) {
+                data = readBytes(in);
+            } else if (kind == CHECKOUT) {
+                blob = in.readUTF();
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A fast LZ77 codec in the manner of LZ4.  Data is cut into blocks of
+ * BLOCK bytes, each compressed on its own: a table indexed by a hash of
+ * the next four bytes remembers where they were last seen, and when
+ * they match, the match is extended and written as a distance and
+ * length in place of the bytes.  Nothing is searched for beyond the
+ * last position with the same hash, which is what makes it fast.
+ * <p>
+ * Each block is written as its length, a flag telling whether it is
+ * compressed, the length of what follows, and its data; a block of
+ * length zero ends the stream.  A compressed block is a list of
+ * sequences, each a count of literal bytes, the bytes, and then, unless
+ * the block is complete, the length and distance of a match.  Numbers
+ * are written as in {@link Delta}.
+ * @author Sara Wang
+ */
+class LzCodec implements Codec {
+
+    /** Length of the blocks compressed on their own. */
+    static final int BLOCK = 1 << 16;
+
+    /** Shortest match worth writing. */
+    private static final int MIN_MATCH = 4;
+
+    /** Number of bits of the hash indexing the match table. */
+    private static final int HASH_BITS = 14;
+
+    /** Flag of a block stored as it is. */
+    private static final int STORED = 0;
+
+    /** Flag of a compressed block. */
+    private static final int COMPRESSED = 1;
+
+    @Override
+    public int id() {
+        return LZ;
+    }
+
+    @Override
+    public String name() {
+        return "lz";
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) {
+        return new Compressor(out);
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) {
+        return new Decompressor(in);
+    }
+
+    /** Returns the first LEN bytes of BUF compressed.
+     * @param buf the bytes
+     * @param len how many of them to compress
+     * @return the compressed bytes */
+    static byte[] compressBlock(byte[] buf, int len) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(len / 2);
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        int anchor = 0;
+        int i = 0;
+        while (i + MIN_MATCH <= len) {
+            int h = hash(buf, i);
+            int from = table[h];
+            table[h] = i;
+            if (from < 0 || Arrays.mismatch(buf, from, from + MIN_MATCH,
+                    buf, i, i + MIN_MATCH) != -1) {
+                i++;
+                continue;
+            }
+            int n = MIN_MATCH;
+            while (i + n < len && buf[from + n] == buf[i + n]) {
+                n++;
+            }
+            Delta.writeNumber(out, i - anchor);
+            out.write(buf, anchor, i - anchor);
+            Delta.writeNumber(out, n);
+            Delta.writeNumber(out, i - from);
+            i += n;
+            anchor = i;
+        }
+        Delta.writeNumber(out, len - anchor);
+        out.write(buf, anchor, len - anchor);
+        return out.toByteArray();
+    }
+
+    /** Decompresses DATA into the first LEN bytes of BUF.
+     * @param data a compressed block
+     * @param buf where to put the block
+     * @param len length of the block */
+    static void decompressBlock(byte[] data, byte[] buf, int len) {
+        int[] pos = {0};
+        int n = 0;
+        while (true) {
+            int literals = (int) Delta.readNumber(data, pos);
+            System.arraycopy(data, pos[0], buf, n, literals);
+            pos[0] += literals;
+            n += literals;
+            if (n >= len) {
+                break;
+            }
+            int length = (int) Delta.readNumber(data, pos);
+            int from = n - (int) Delta.readNumber(data, pos);
+            if (from < 0 || n + length > len) {
+                throw Utils.error("Corrupt compressed data.");
+            }
+            for (int k = 0; k < length; k++) {
+                buf[n++] = buf[from + k];
+            }
+        }
+        if (n != len || pos[0] != data.length) {
+            throw Utils.error("Corrupt compressed data.");
+        }
+    }
+
+    /** Returns a hash of the MIN_MATCH bytes of BUF at I.
+     * @param buf the bytes
+     * @param i where to start
+     * @return the hash */
+    private static int hash(byte[] buf, int i) {
+        int v = (buf[i] & 0xff) | (buf[i + 1] & 0xff) << 8
+                | (buf[i + 2] & 0xff) << 16 | (buf[i + 3] & 0xff) << 24;
+        return (v * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    /** Reads a number written by Delta.writeNumber from IN.
+     * @param in the stream
+     * @return the number */
+    private static int readNumber(InputStream in) throws IOException {
+        int n = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.read();
+            if (b == -1) {
+                throw new EOFException("Truncated compressed data.");
+            }
+            n |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return n;
+    }
+
+    /** A stream compressing a block at a time. */
+    private static class Compressor extends FilterOutputStream {
+
+        /** The block being filled. */
+        private final byte[] block = new byte[BLOCK];
+
+        /** Number of bytes in BLOCK. */
+        private int count;
+
+        /** A stream compressing into OUT.
+         * @param out the stream to write to */
+        Compressor(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == BLOCK) {
+                writeBlock();
+            }
+            block[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == BLOCK) {
+                    writeBlock();
+                }
+                int n = Math.min(len, BLOCK - count);
+                System.arraycopy(b, off, block, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (count > 0) {
+                writeBlock();
+            }
+            out.write(0);
+            super.close();
+        }
+
+        /** Writes out the block filled so far. */
+        private void writeBlock() throws IOException {
+            byte[] packed = compressBlock(block, count);
+            boolean stored = packed.length >= count;
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            Delta.writeNumber(header, count);
+            header.write(stored ? STORED : COMPRESSED);
+            Delta.writeNumber(header, stored ? count : packed.length);
+            header.writeTo(out);
+            if (stored) {
+                out.write(block, 0, count);
+            } else {
+                out.write(packed);
+            }
+            count = 0;
+        }
+    }
+
+    /** A stream decompressing a block at a time. */
+    private static class Decompressor extends InputStream {
+
+        /** The compressed stream. */
+        private final InputStream in;
+
+        /** The current block. */
+        private final byte[] block = new byte[BLOCK];
+
+        /** Length of the current block. */
+        private int count;
+
+        /** Position of the next byte to read in the block. */
+        private int pos;
+
+        /** Whether the end of the stream was reached. */
+        private boolean done;
+
+        /** A stream of the data compressed in IN.
+         * @param in the compressed stream */
+        Decompressor(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return block[pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, count - pos);
+            System.arraycopy(block, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        /** Reads the next block if the current one is used up.
+         * @return whether there is anything left to read */
+        private boolean fill() throws IOException {
+            while (pos == count && !done) {
+                int len = readNumber(in);
+                if (len == 0) {
+                    done = true;
+                    break;
+                }
+                if (len > BLOCK) {
+                    throw Utils.error("Corrupt compressed data.");
+                }
+                int flag = in.read();
+                byte[] data = in.readNBytes(readNumber(in));
+                if (flag == STORED && data.length == len) {
+                    System.arraycopy(data, 0, block, 0, len);
+                } else if (flag == COMPRESSED) {
+                    decompressBlock(data, block, len);
+                } else {
+                    throw Utils.error("Corrupt compressed data.");
+                }
+                count = len;
+                pos = 0;
+            }
+            return pos < count;
+        }
+    }
+}
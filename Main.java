@@ -1,8 +1,15 @@
 package gitlet;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.InputStreamReader;
+import java.text.Format;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Sara Wang
@@ -17,83 +24,45 @@ public class Main {
      * @param args the input command */
     public static void testLength(int num, String... args) {
         if (args.length != num) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
-        }
-    }
-
-    /** Reconstruct the commit tree to retrieve previous information.
-     * @return the commit tree with all information stored */
-    public static CommitTree deserializeCommitTree() throws IOException {
-
-        File commitTreeFile = new File(".gitlet/commitTree.ser");
-
-        if (commitTreeFile.exists()) {
-            return Utils.readObject(commitTreeFile, CommitTree.class);
-        } else {
-            return new CommitTree();
-        }
-    }
-
-    /** Save all information in a commit tree for future reference.
-     * @param commitTree stores all information */
-    public static void serializeCommitTree(CommitTree commitTree) {
-
-        try {
-            File commitTreeFile = new File(".gitlet/commitTree.ser");
-            if (!commitTreeFile.exists()) {
-                commitTreeFile.createNewFile();
-            }
-            Utils.writeObject(commitTreeFile, commitTree);
-        } catch (IOException e) {
-            System.out.println(e.toString());
+            throw Utils.error("Incorrect operands.");
         }
     }
 
-    /** Reconstruct the commit tree to retrieve previous information.
-     * @return the commit tree with all information stored */
-    public static CommitTree deserializeRemote() throws IOException {
-
-        File commitTreeFile = new File(".gitlet/remote.ser");
+    /** Commands that change nothing, which may run alongside each
+     *  other. */
+    private static final List<String> READ_ONLY =
+            Arrays.asList("log", "global-log", "find", "status", "diff",
+                    "stats");
 
-        if (commitTreeFile.exists()) {
-            return Utils.readObject(commitTreeFile, CommitTree.class);
-        } else {
-            return new CommitTree();
-        }
+    /** Check whether a command changes nothing in the repository.
+     * @param args the input command
+     * @return whether it only reads */
+    static boolean readOnly(String... args) {
+        return READ_ONLY.contains(args[0])
+                || args[0].equals("config") && args.length == 2;
     }
 
-    /** Save all information in a commit tree for future reference.
-     * @param commitTree stores all information */
-    public static void serializeRemote(CommitTree commitTree) {
+    /** Format of the dates of commits in logs. */
+    private static final String DATE_FORMAT = "EEE MMM d HH:mm:ss yyyy Z";
 
-        try {
-            File commitTreeFile = new File(".gitlet/remote.ser");
-            if (!commitTreeFile.exists()) {
-                commitTreeFile.createNewFile();
-            }
-            Utils.writeObject(commitTreeFile, commitTree);
-        } catch (IOException e) {
-            System.out.println(e.toString());
-        }
-    }
-
-    /** Parse the commands and execute accordingly.
+    /** Parse the commands and execute accordingly, printing what they
+     *  return.
      * @param gitlet all information
      * @param args input commands */
     public static void command(CommitTree gitlet, String... args)
             throws IOException {
         String command = args[0];
-        File metaData = new File(".gitlet");
-        if (!metaData.exists() && !command.equals("init")) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+        if (!gitlet.exists() && !command.equals("init")) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
         }
         switch (command) {
         case "init":
             testLength(1, args); gitlet.commitInit(); break;
         case "add":
-            testLength(2, args); gitlet.add(args[1]); break;
+            if (args.length < 2) {
+                throw Utils.error("Incorrect operands.");
+            }
+            gitlet.add(Arrays.copyOfRange(args, 1, args.length)); break;
         case "commit":
             String message = "";
             if (args.length > 1) {
@@ -103,13 +72,17 @@ public class Main {
         case "rm":
             testLength(2, args); gitlet.rm(args[1]); break;
         case "log":
-            testLength(1, args); gitlet.log(); break;
+            testLength(1, args); printLog(gitlet.log()); break;
         case "global-log":
-            testLength(1, args); gitlet.globalLog(); break;
+            testLength(1, args); printGlobalLog(gitlet.globalLog()); break;
         case "find":
-            testLength(2, args); gitlet.find(args[1]); break;
+            testLength(2, args);
+            for (String id : gitlet.find(args[1])) {
+                System.out.println(id);
+            }
+            break;
         case "status":
-            testLength(1, args); gitlet.status(); break;
+            testLength(1, args); printStatus(gitlet.status()); break;
         case "checkout":
             if (args.length == 2) {
                 gitlet.checkOutFromBranch(args[1]);
@@ -118,8 +91,7 @@ public class Main {
             } else if (args.length == 4) {
                 gitlet.checkOutFromSomeCommit(args);
             } else {
-                System.out.println("Incorrect operands.");
-                System.exit(0);
+                throw Utils.error("Incorrect operands.");
             }
             break;
         case "branch":
@@ -128,44 +100,234 @@ public class Main {
             testLength(2, args); gitlet.rmBranch(args[1]); break;
         case "reset":
             testLength(2, args); gitlet.reset(args[1]); break;
+        case "gc": case "repack":
+            testLength(1, args); gitlet.gc(); break;
+        case "config":
+            if (args.length == 2) {
+                System.out.println(gitlet.config(args[1]));
+            } else {
+                testLength(3, args);
+                gitlet.config(args[1], args[2]);
+            }
+            break;
+        case "stats":
+            testLength(1, args);
+            for (Map.Entry<String, Long> e : gitlet.stats().entrySet()) {
+                System.out.println(e.getKey() + " " + e.getValue());
+            }
+            break;
+        case "diff":
+            if (args.length == 1) {
+                System.out.print(gitlet.diff(false));
+            } else if (args.length == 2 && args[1].equals("--cached")) {
+                System.out.print(gitlet.diff(true));
+            } else {
+                testLength(3, args);
+                System.out.print(gitlet.diff(args[1], args[2]));
+            }
+            break;
         case "merge":
-            testLength(2, args); gitlet.merge(args[1]); break;
+            testLength(2, args); printMerge(gitlet.merge(args[1])); break;
         case "add-remote":
             testLength(3, args); gitlet.addRemote(args[1], args[2]); break;
         case "rm-remote":
-            testLength(2, args); gitlet.rmRemote(args[1]); break;
+            testLength(2, args);
+            try {
+                gitlet.rmRemote(args[1]);
+            } catch (GitletException excp) {
+                System.err.println(excp.getMessage());
+            }
+            break;
         case "push":
-            testLength(3, args); gitlet.push(args[1], args[2]); break;
+            testLength(3, args);
+            try {
+                gitlet.push(args[1], args[2]);
+            } catch (GitletException excp) {
+                System.err.println(excp.getMessage());
+            }
+            break;
         default:
-            System.out.println("No command with that name exists.");
-            System.exit(0); break;
+            throw Utils.error("No command with that name exists.");
         }
     }
 
+    /** Print the commits of a log, newest first.
+     * @param commits the commits */
+    private static void printLog(List<Commit> commits) {
+        Format format = new SimpleDateFormat(DATE_FORMAT);
+        for (int i = 0; i < commits.size(); i++) {
+            Commit c = commits.get(i);
+            if (i > 0) {
+                System.out.println();
+            }
+            System.out.println("===");
+            System.out.println("commit " + c.getId());
+            if (c.getParents() != null && c.getParents().size() > 1) {
+                List<String> parents = c.getParents();
+                System.out.println("Merge: " + parents.get(0).substring(0, 7)
+                        + " " + parents.get(1).substring(0, 7));
+            }
+            System.out.println("Date: " + format.format(c.getCommitDate()));
+            System.out.println(c.getCommitMessage());
+        }
+    }
 
-    /** Run gitlet.
+    /** Print all commits, as the global-log command does.
+     * @param commits the commits */
+    private static void printGlobalLog(List<Commit> commits) {
+        Format format = new SimpleDateFormat(DATE_FORMAT);
+        for (int i = 0; i < commits.size(); i++) {
+            Commit c = commits.get(i);
+            System.out.println("===");
+            System.out.println("commit " + c.getId());
+            if (c.getParents() != null && c.getParents().size() > 1) {
+                List<String> parents = c.getParents();
+                System.out.println("Merge: " + parents.get(0).substring(0, 8)
+                        + parents.get(1).substring(0, 8));
+            }
+            System.out.println("Date: " + format.format(c.getCommitDate()));
+            System.out.println(c.getCommitMessage());
+            if (i < commits.size() - 1) {
+                System.out.println();
+            }
+        }
+    }
+
+    /** Print the status of the repository.
+     * @param status the status */
+    private static void printStatus(Status status) {
+        System.out.println("=== Branches ===");
+        for (String p : status.getBranches()) {
+            if (p.equals(status.getCurrentBranch())) {
+                System.out.print("*");
+            }
+            System.out.println(p);
+        }
+        System.out.println();
+        System.out.println("=== Staged Files ===");
+        for (String p : status.getStaged()) {
+            System.out.println(p);
+        }
+        System.out.println();
+        System.out.println("=== Removed Files ===");
+        for (String p : status.getRemoved()) {
+            System.out.println(p);
+        }
+        System.out.println();
+        System.out.println("=== Modifications Not Staged For Commit ===");
+        for (Map.Entry<String, String> e
+                : status.getModified().entrySet()) {
+            System.out.println(e.getKey() + " (" + e.getValue() + ")");
+        }
+        System.out.println();
+        System.out.println("=== Untracked Files ===");
+        for (String p : status.getUntracked()) {
+            System.out.println(p);
+        }
+    }
+
+    /** Print how a merge turned out.
+     * @param outcome the outcome */
+    private static void printMerge(CommitTree.MergeOutcome outcome) {
+        switch (outcome) {
+        case ANCESTOR:
+            System.out.println("Given branch is an ancestor "
+                    + "of the current branch.");
+            break;
+        case FAST_FORWARD:
+            System.out.println("Current branch fast-forwarded.");
+            break;
+        case CONFLICT:
+            System.out.println("Encountered a merge conflict.");
+            break;
+        default:
+            break;
+        }
+    }
+
+    /** Run one command on the repository in the current directory,
+     * saving its changes only if it succeeds.
+     * @param args the command */
+    static void run(String... args) throws IOException {
+        try (CommitTree gitlet = CommitTree.open(!readOnly(args))) {
+            command(gitlet, args);
+            gitlet.save();
+        }
+    }
+
+    /** Run one command on REPO, which is kept open across commands,
+     * saving its changes only if it succeeds and otherwise dropping all
+     * it read along with them.
+     * @param repo the repository, not locked
+     * @param args the command */
+    static void run(Repository repo, String... args) throws IOException {
+        repo.reopen(!readOnly(args));
+        boolean saved = false;
+        try {
+            command(new CommitTree(repo), args);
+            repo.save();
+            saved = true;
+        } finally {
+            if (!saved) {
+                repo.reset();
+            }
+            repo.close();
+        }
+    }
+
+    /** Run gitlet, in the repository's daemon if one is running.
      * @param args the command */
     public static void main(String... args) throws IOException {
         if (args == null || args.length < 1) {
             System.err.println("Please enter a command.");
             System.exit(0);
         }
-        ArrayList<String> remoteCommands = new ArrayList<>();
-        remoteCommands.add("add-remote");
-        remoteCommands.add("rm-remote");
-        remoteCommands.add("push");
-        remoteCommands.add("fetch");
-        remoteCommands.add("pull");
-
-        CommitTree gitlet = deserializeCommitTree();
-        command(gitlet, args);
+        try {
+            if (args[0].equals("daemon")) {
+                daemon(args);
+            } else if (args[0].equals("batch")) {
+                batch(args);
+            } else if (!Daemon.forward(args)) {
+                run(args);
+            }
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
 
-        if (remoteCommands.contains(args[0])) {
-            CommitTree remote = deserializeRemote();
-            command(remote, args);
-            serializeRemote(remote);
+    /** Run the commands of a script, read from the file named by the
+     * operand or else from the standard input, in one session.
+     * @param args the batch command */
+    private static void batch(String... args) throws IOException {
+        if (args.length > 2) {
+            throw Utils.error("Incorrect operands.");
+        }
+        if (args.length == 2 && !new File(args[1]).isFile()) {
+            throw Utils.error("File does not exist.");
+        }
+        Repository repo = Repository.open(true);
+        try (BufferedReader in = new BufferedReader(args.length == 2
+                ? new FileReader(args[1])
+                : new InputStreamReader(System.in))) {
+            new Batch(repo).run(in);
+        } finally {
+            repo.close();
         }
-        serializeCommitTree(gitlet);
+    }
 
+    /** Start the daemon of the repository, or stop it.
+     * @param args the daemon command */
+    private static void daemon(String... args) {
+        if (args.length == 1) {
+            Daemon.serve();
+        } else {
+            testLength(2, args);
+            if (!args[1].equals(Daemon.STOP)) {
+                throw Utils.error("Incorrect operands.");
+            }
+            if (!Daemon.forward(args)) {
+                throw Utils.error("No daemon is running.");
+            }
+        }
     }
 }
@@ -0,0 +1,144 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The outcome of merging two sets of files against the files of their
+ * split point.  Each path is decided on its own, so the paths are
+ * decided in parallel on the common fork-join pool; files changed on
+ * both sides are merged line by line with {@link Diff3} and the result
+ * stored as a new blob.  The three versions are copied out of the store
+ * into temporary files and mapped into memory, and the result is
+ * written to a temporary file and streamed into the store, so no
+ * version is ever held whole in the heap.  Nothing here touches the
+ * working directory or the index; the caller applies the whole outcome
+ * in one step.
+ * @author Sara Wang
+ */
+class Merge {
+
+    /** What becomes of one file. */
+    static class Result {
+
+        /** Id of the blob the file is to hold, or null to remove it. */
+        private final String blob;
+
+        /** Whether the blob holds conflict markers. */
+        private final boolean conflict;
+
+        /** A file to hold BLOB.
+         * @param blob id of a blob, or null to remove the file
+         * @param conflict whether the blob holds conflict markers */
+        Result(String blob, boolean conflict) {
+            this.blob = blob;
+            this.conflict = conflict;
+        }
+
+        /** Returns the id of the blob the file is to hold.
+         * @return id of a blob, or null to remove the file */
+        String blob() {
+            return blob;
+        }
+
+        /** Returns whether the two sides' changes to the file overlap.
+         * @return whether it conflicts */
+        boolean conflict() {
+            return conflict;
+        }
+    }
+
+    /** Returns what becomes of each file of OURS and THEIRS when the
+     * changes THEIRS makes to BASE are merged into OURS.  Files that
+     * stay as they are in OURS are left out.
+     * @param store the object store, where merged files are stored
+     * @param base filename to blob id mapping of the split point
+     * @param ours filename to blob id mapping of the current branch
+     * @param theirs filename to blob id mapping of the given branch
+     * @return path to result mapping, sorted */
+    static TreeMap<String, Result> plan(ObjectStore store,
+                                        Map<String, String> base,
+                                        Map<String, String> ours,
+                                        Map<String, String> theirs) {
+        HashSet<String> paths = new HashSet<>(ours.keySet());
+        paths.addAll(theirs.keySet());
+        ConcurrentHashMap<String, Result> results = new ConcurrentHashMap<>();
+        paths.parallelStream().forEach(path -> {
+            Result r = mergeFile(store, base.get(path), ours.get(path),
+                    theirs.get(path));
+            if (r != null) {
+                results.put(path, r);
+            }
+        });
+        return new TreeMap<>(results);
+    }
+
+    /** Returns what becomes of a file given its three versions.
+     * @param store the object store
+     * @param base id of its blob at the split point, or null
+     * @param ours id of its blob in the current branch, or null
+     * @param theirs id of its blob in the given branch, or null
+     * @return the result, or null if the file stays as it is */
+    private static Result mergeFile(ObjectStore store, String base,
+                                    String ours, String theirs) {
+        if (Contents.sameBlob(ours, theirs)
+                || Contents.sameBlob(base, theirs)) {
+            return null;
+        }
+        if (Contents.sameBlob(base, ours)) {
+            return new Result(theirs, false);
+        }
+        ArrayList<File> temps = new ArrayList<>();
+        try {
+            ByteBuffer o = map(store, base, temps);
+            ByteBuffer a = map(store, ours, temps);
+            ByteBuffer b = map(store, theirs, temps);
+            File merged = store.tempFile();
+            temps.add(merged);
+            boolean conflict;
+            try (OutputStream out = new BufferedOutputStream(
+                    new FileOutputStream(merged), ObjectStore.BUFFER_SIZE)) {
+                conflict = Diff3.merge(o, a, b, Channels.newChannel(out));
+            }
+            return new Result(store.putFile(merged), conflict);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            for (File f : temps) {
+                f.delete();
+            }
+        }
+    }
+
+    /** Returns the contents of blob ID, copied into a temporary file of
+     * the store that is added to TEMPS and mapped into memory.
+     * @param store the object store
+     * @param id id of a blob, or null
+     * @param temps the temporary files made so far
+     * @return its contents, empty if ID is null */
+    private static ByteBuffer map(ObjectStore store, String id,
+                                  ArrayList<File> temps) throws IOException {
+        if (id == null) {
+            return ByteBuffer.allocate(0);
+        }
+        File f = store.tempFile();
+        temps.add(f);
+        store.copyTo(id, f);
+        try (FileChannel ch = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package gitlet;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Objects read from an object store, kept so that they need not be read
+ * and decoded again.  An object never changes once stored, so nothing
+ * cached is ever stale.
+ * <p>
+ * Decoded commits and trees are kept within a budget of bytes, each
+ * weighed by the size of its encoded form, in two generations: an
+ * object enters the young one, and moves to the old one when it is read
+ * again while still young.  Each generation drops its least recently
+ * read object first, and the old one hands it back to the young one, so
+ * objects read over and over, like the recent commits and the trees of
+ * the head, are not pushed out by a single pass over many others, like
+ * a global log.  The contents of blobs are held only by soft
+ * references, so they stay until memory runs short.
+ * @author Sara Wang
+ */
+class ObjectCache {
+
+    /** Bytes of decoded objects a store keeps by default. */
+    static final long DEFAULT_BUDGET = 32L << 20;
+
+    /** Percentage of the budget the old generation may take. */
+    private static final int OLD_SHARE = 80;
+
+    /** Bytes of decoded objects kept at most. */
+    private final long budget;
+
+    /** Objects read once since they entered, least recently read first. */
+    private final LinkedHashMap<String, Entry> young;
+
+    /** Objects read again while young, least recently read first. */
+    private final LinkedHashMap<String, Entry> old;
+
+    /** Total weight of the young objects. */
+    private long youngWeight;
+
+    /** Total weight of the old objects. */
+    private long oldWeight;
+
+    /** Contents of blobs, by id. */
+    private final ConcurrentHashMap<String, Payload> payloads;
+
+    /** Where the references of cleared contents are queued. */
+    private final ReferenceQueue<byte[]> cleared;
+
+    /** Reads of decoded objects that were cached. */
+    private final LongAdder hits = new LongAdder();
+
+    /** Reads of decoded objects that were not cached. */
+    private final LongAdder misses = new LongAdder();
+
+    /** Decoded objects dropped to stay within the budget. */
+    private final LongAdder evictions = new LongAdder();
+
+    /** Reads of contents that were cached. */
+    private final LongAdder payloadHits = new LongAdder();
+
+    /** Reads of contents that were not cached. */
+    private final LongAdder payloadMisses = new LongAdder();
+
+    /** A cache keeping at most BUDGET bytes of decoded objects.
+     * @param budget the budget in bytes */
+    ObjectCache(long budget) {
+        this.budget = budget;
+        this.young = new LinkedHashMap<>(16, 0.75f, true);
+        this.old = new LinkedHashMap<>(16, 0.75f, true);
+        this.payloads = new ConcurrentHashMap<>();
+        this.cleared = new ReferenceQueue<>();
+    }
+
+    /** Returns the decoded object with this id, if cached.
+     * @param id id of the object
+     * @return the object, or null */
+    synchronized Object get(String id) {
+        Entry e = old.get(id);
+        if (e == null) {
+            e = young.remove(id);
+            if (e == null) {
+                misses.increment();
+                return null;
+            }
+            youngWeight -= e.weight;
+            old.put(id, e);
+            oldWeight += e.weight;
+            long oldBudget = budget / 100 * OLD_SHARE;
+            Iterator<Map.Entry<String, Entry>> it =
+                    old.entrySet().iterator();
+            while (oldWeight > oldBudget) {
+                Map.Entry<String, Entry> eldest = it.next();
+                it.remove();
+                oldWeight -= eldest.getValue().weight;
+                young.put(eldest.getKey(), eldest.getValue());
+                youngWeight += eldest.getValue().weight;
+            }
+            shrink();
+        }
+        hits.increment();
+        return e.value;
+    }
+
+    /** Keeps VALUE, the decoded object with this id, in the young
+     * generation, unless it alone would exceed the budget.
+     * @param id id of the object
+     * @param value the object
+     * @param weight size of its encoded form in bytes */
+    synchronized void put(String id, Object value, long weight) {
+        if (weight > budget || old.containsKey(id)
+                || young.containsKey(id)) {
+            return;
+        }
+        young.put(id, new Entry(value, weight));
+        youngWeight += weight;
+        shrink();
+    }
+
+    /** Drops the least recently read young objects until the cache is
+     * within its budget. */
+    private void shrink() {
+        Iterator<Entry> it = young.values().iterator();
+        while (youngWeight + oldWeight > budget && it.hasNext()) {
+            youngWeight -= it.next().weight;
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    /** Returns the contents of the blob with this id, if cached.  They
+     * are shared, so must not be changed.
+     * @param id id of the blob
+     * @return its contents, or null */
+    byte[] payload(String id) {
+        drain();
+        Payload ref = payloads.get(id);
+        byte[] result = ref == null ? null : ref.get();
+        if (result == null) {
+            payloadMisses.increment();
+        } else {
+            payloadHits.increment();
+        }
+        return result;
+    }
+
+    /** Keeps CONTENTS, the contents of the blob with this id, until
+     * memory runs short.
+     * @param id id of the blob
+     * @param contents its contents */
+    void putPayload(String id, byte[] contents) {
+        drain();
+        payloads.put(id, new Payload(id, contents, cleared));
+    }
+
+    /** Forgets the contents whose references were cleared. */
+    private void drain() {
+        for (Object ref = cleared.poll(); ref != null; ref = cleared.poll()) {
+            Payload p = (Payload) ref;
+            payloads.remove(p.id, p);
+        }
+    }
+
+    /** Returns the counters of this cache, by name.
+     * @return counter name to value mapping, in a fixed order */
+    synchronized LinkedHashMap<String, Long> stats() {
+        LinkedHashMap<String, Long> result = new LinkedHashMap<>();
+        result.put("object.hits", hits.sum());
+        result.put("object.misses", misses.sum());
+        result.put("object.evictions", evictions.sum());
+        result.put("object.count", (long) (young.size() + old.size()));
+        result.put("object.bytes", youngWeight + oldWeight);
+        result.put("blob.hits", payloadHits.sum());
+        result.put("blob.misses", payloadMisses.sum());
+        return result;
+    }
+
+    /** A decoded object and its weight. */
+    private static class Entry {
+
+        /** The object. */
+        private final Object value;
+
+        /** Size of its encoded form in bytes. */
+        private final long weight;
+
+        /** An entry for VALUE of this WEIGHT.
+         * @param value the object
+         * @param weight its weight */
+        Entry(Object value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /** A soft reference to the contents of a blob, knowing its id. */
+    private static class Payload extends SoftReference<byte[]> {
+
+        /** Id of the blob. */
+        private final String id;
+
+        /** A reference to CONTENTS, the contents of blob ID, queued on
+         * QUEUE once cleared.
+         * @param id id of the blob
+         * @param contents its contents
+         * @param queue the queue */
+        Payload(String id, byte[] contents, ReferenceQueue<byte[]> queue) {
+            super(contents, queue);
+            this.id = id;
+        }
+    }
+}
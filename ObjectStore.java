@@ -0,0 +1,597 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A content-addressed store of blobs, trees and commits.
+ * Every object is kept once, named by the SHA-1 hash of its type and
+ * contents, so writing an object that is already present costs nothing.
+ * New objects are written as loose files under .gitlet/objects holding
+ * the header and contents compressed together by the store's
+ * {@link Codec}, preceded by a byte recording which codec that was, and
+ * blobs are streamed in and out in fixed-size pieces so files of any
+ * size can be stored.  Loose files without that byte, written before
+ * codecs could be chosen, are plain deflate streams.
+ * {@link #repack} moves all objects into a single {@link Pack} under
+ * .gitlet/objects/pack, storing similar objects as deltas.
+ * <p>
+ * Objects are not synced to disk as they are written.  The files
+ * written since the last {@link #sync} are remembered, and synced with
+ * their directories all together, before the changes that refer to
+ * them are made.
+ * @author Sara Wang
+ */
+class ObjectStore {
+
+    /** Type of objects holding file contents. */
+    static final String BLOB = "blob";
+
+    /** Type of objects mapping filenames to blob ids. */
+    static final String TREE = "tree";
+
+    /** Type of commit objects. */
+    static final String COMMIT = "commit";
+
+    /** Size of the buffer used to stream objects. */
+    static final int BUFFER_SIZE = 8192;
+
+    /** Set in the first byte of a loose file, which holds the id of its
+     *  codec; the first byte of a deflate stream never has it set. */
+    private static final int CODEC_MARK = 0x80;
+
+    /** The store of the repository in the current directory. */
+    private static ObjectStore local;
+
+    /** Directory holding the loose objects. */
+    private final File dir;
+
+    /** The packs, or null if not read yet. */
+    private List<Pack> packs;
+
+    /** Codec new objects are compressed with. */
+    private Codec codec;
+
+    /** Objects read so far. */
+    private final ObjectCache cache;
+
+    /** Files written since the last sync. */
+    private final Set<File> unsynced;
+
+    /** A store keeping its objects in DIR.
+     * @param dir directory of the objects */
+    ObjectStore(File dir) {
+        this.dir = dir;
+        this.codec = Codec.forName(Codec.DEFAULT);
+        this.cache = new ObjectCache(ObjectCache.DEFAULT_BUDGET);
+        this.unsynced = ConcurrentHashMap.newKeySet();
+    }
+
+    /** Returns the store of the repository in the current directory.
+     * @return the store under .gitlet/objects */
+    static ObjectStore local() {
+        if (local == null) {
+            local = new ObjectStore(Utils.join(".gitlet", "objects"));
+        }
+        return local;
+    }
+
+    /** Returns the header written in front of every object.
+     * @param type type of the object
+     * @param size length of the object contents
+     * @return the header bytes */
+    static byte[] header(String type, long size) {
+        return (type + " " + size + "\0").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the id an object would be stored under.
+     * @param type type of the object
+     * @param body contents of the object
+     * @return the id */
+    static String hash(String type, byte[] body) {
+        return Utils.sha1(header(type, body.length), body);
+    }
+
+    /** Returns the id FILE would be stored under as a blob, reading it
+     * a piece at a time.
+     * @param file a plain file
+     * @return the id */
+    static String hashFile(File file) {
+        MessageDigest md = Utils.sha1Digest();
+        md.update(header(BLOB, file.length()));
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+                md.update(buf, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Utils.hexDigest(md);
+    }
+
+    /** Returns the codec new objects are compressed with.
+     * @return the codec */
+    Codec getCodec() {
+        return codec;
+    }
+
+    /** Compresses new objects with CODEC from now on.
+     * @param codec the codec */
+    void setCodec(Codec codec) {
+        this.codec = codec;
+    }
+
+    /** Returns the directory holding the objects.
+     * @return the directory */
+    File getDir() {
+        return dir;
+    }
+
+    /** Stores BODY as an object of type TYPE unless it is already there.
+     * @param type type of the object
+     * @param body contents of the object
+     * @return the id of the object */
+    String put(String type, byte[] body) {
+        String id = hash(type, body);
+        if (contains(id)) {
+            return id;
+        }
+        File tmp = tempFile();
+        try (OutputStream out = compress(tmp)) {
+            out.write(header(type, body.length));
+            out.write(body);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return install(tmp, id);
+    }
+
+    /** Stores the contents of FILE as a blob, hashing and compressing it
+     * a piece at a time so that it never has to fit in memory.
+     * @param file a plain file
+     * @return the id of the blob */
+    String putFile(File file) {
+        long size = file.length();
+        byte[] header = header(BLOB, size);
+        MessageDigest md = Utils.sha1Digest();
+        md.update(header);
+        File tmp = tempFile();
+        try (InputStream in = new FileInputStream(file);
+             OutputStream out = compress(tmp)) {
+            out.write(header);
+            byte[] buf = new byte[BUFFER_SIZE];
+            long total = 0;
+            for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+                md.update(buf, 0, n);
+                out.write(buf, 0, n);
+                total += n;
+            }
+            if (total != size) {
+                throw new IOException(file + " changed while being stored.");
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return install(tmp, Utils.hexDigest(md));
+    }
+
+    /** Stores the serialized form of OBJ as an object of type TYPE.
+     * @param type type of the object
+     * @param obj the object
+     * @return the id of the object */
+    String putObject(String type, Serializable obj) {
+        return put(type, Utils.serialize(obj));
+    }
+
+    /** Returns whether an object with this id is stored.
+     * @param id id of the object
+     * @return whether it exists */
+    boolean contains(String id) {
+        return id != null && id.length() == Utils.UID_LENGTH
+                && (packOf(id) != null || fileOf(id).isFile());
+    }
+
+    /** Returns the type of the object with this id, reading only the
+     * header of its file.
+     * @param id id of the object
+     * @return the type */
+    String typeOf(String id) {
+        Pack pack = packOf(id);
+        if (pack != null) {
+            return pack.typeOf(id);
+        }
+        try (InputStream in = inflate(id)) {
+            String header = readHeader(in, id);
+            return header.substring(0, header.indexOf(' '));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the length of the contents of the object with this id,
+     * reading only its header.
+     * @param id id of the object
+     * @return the length in bytes */
+    long sizeOf(String id) {
+        Pack pack = packOf(id);
+        if (pack != null) {
+            return pack.sizeOf(id);
+        }
+        try (InputStream in = inflate(id)) {
+            String header = readHeader(in, id);
+            return Long.parseLong(header.substring(header.indexOf(' ') + 1));
+        } catch (IOException | NumberFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the ids of all objects in the store.
+     * @return the ids, sorted */
+    List<String> ids() {
+        TreeSet<String> result = new TreeSet<>();
+        for (Pack pack : packs()) {
+            result.addAll(pack.ids());
+        }
+        for (String prefix : looseDirs()) {
+            List<String> rest = Utils.plainFilenamesIn(new File(dir, prefix));
+            if (rest != null) {
+                for (String name : rest) {
+                    result.add(prefix + name);
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Packs every object of the store into one new pack, then deletes
+     * the old packs and the loose objects.
+     * @param names a filename for each blob id known to be a version of
+     *              that file, used to choose which blobs to delta */
+    void repack(Map<String, String> names) {
+        List<String> all = ids();
+        if (all.isEmpty()) {
+            return;
+        }
+        File index = new PackWriter(this, names)
+                .write(new File(dir, "pack"), all);
+        sync();
+        List<Pack> old = packs();
+        synchronized (this) {
+            packs = null;
+        }
+        for (Pack pack : old) {
+            if (!pack.getIndexFile().equals(index)) {
+                pack.getIndexFile().delete();
+                pack.getPackFile().delete();
+            }
+        }
+        for (String prefix : looseDirs()) {
+            File sub = new File(dir, prefix);
+            List<String> rest = Utils.plainFilenamesIn(sub);
+            if (rest != null) {
+                for (String name : rest) {
+                    new File(sub, name).delete();
+                }
+            }
+            sub.delete();
+        }
+    }
+
+    /** Remembers F, a file just written into the store, to be synced.
+     * @param f a loose object, pack or pack index */
+    void written(File f) {
+        unsynced.add(f);
+    }
+
+    /** Syncs to disk the files written since the last sync, and the
+     * directories holding them, so that no change made after this
+     * refers to an object that a crash could lose. */
+    void sync() {
+        if (unsynced.isEmpty()) {
+            return;
+        }
+        ArrayList<File> files = new ArrayList<>(unsynced);
+        unsynced.removeAll(files);
+        files.parallelStream().forEach(f -> {
+            try (FileChannel ch = FileChannel.open(f.toPath(),
+                    StandardOpenOption.READ)) {
+                ch.force(true);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        });
+        TreeSet<File> dirs = new TreeSet<>();
+        for (File f : files) {
+            dirs.add(f.getParentFile());
+        }
+        dirs.add(dir);
+        for (File d : dirs) {
+            Journal.syncDirectory(d);
+        }
+    }
+
+    /** Returns the cache of objects read from this store.
+     * @return the cache */
+    ObjectCache cache() {
+        return cache;
+    }
+
+    /** Returns the contents of the object with this id, kept in the
+     * cache for as long as memory allows.  They are shared, so must not
+     * be changed.
+     * @param id id of the object
+     * @return the contents, without the header */
+    byte[] get(String id) {
+        byte[] result = cache.payload(id);
+        if (result == null) {
+            result = read(id);
+            cache.putPayload(id, result);
+        }
+        return result;
+    }
+
+    /** Returns the contents of the object with this id, read afresh
+     * and not cached.
+     * @param id id of the object
+     * @return the contents, without the header */
+    byte[] read(String id) {
+        try (InputStream in = open(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream of the contents of the object with this id.
+     * The caller must close it.
+     * @param id id of the object
+     * @return the contents, without the header */
+    InputStream open(String id) {
+        Pack pack = packOf(id);
+        if (pack != null) {
+            return pack.open(id);
+        }
+        InputStream in = inflate(id);
+        try {
+            readHeader(in, id);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return in;
+    }
+
+    /** Writes the contents of the blob with this id to FILE, a piece at
+     * a time, creating or overwriting it as needed.
+     * @param id id of the blob
+     * @param file the file to write */
+    void copyTo(String id, File file) {
+        if (file.isDirectory()) {
+            throw new IllegalArgumentException("cannot overwrite directory");
+        }
+        Pack pack = packOf(id);
+        if (pack != null) {
+            pack.copyTo(id, file);
+            return;
+        }
+        try (InputStream in = open(id);
+             OutputStream out = new FileOutputStream(file)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+                out.write(buf, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the object with this id, deserialized, from the cache
+     * if it was read before.  It is shared, so must not be changed.
+     * @param id id of the object
+     * @param expectedClass class of the object
+     * @param <T> type of the object
+     * @return the object */
+    <T extends Serializable> T getObject(String id, Class<T> expectedClass) {
+        Object cached = cache.get(id);
+        if (expectedClass.isInstance(cached)) {
+            return expectedClass.cast(cached);
+        }
+        byte[] body = read(id);
+        T result = Utils.deserialize(body, expectedClass);
+        cache.put(id, result, body.length);
+        return result;
+    }
+
+    /** Returns the loose file of the object with this id.
+     * @param id id of the object
+     * @return the file */
+    File fileOf(String id) {
+        return Utils.join(dir, id.substring(0, 2), id.substring(2));
+    }
+
+    /** Forgets the packs read so far if packs were since added or
+     * removed, as by another process, so that a store kept open across
+     * commands sees them. */
+    synchronized void refresh() {
+        if (packs != null && !packIndexNames().equals(packNames())) {
+            packs = null;
+        }
+    }
+
+    /** Returns the packs of the store, reading their indexes the first
+     * time.
+     * @return the packs */
+    private synchronized List<Pack> packs() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            for (String name : packIndexNames()) {
+                packs.add(new Pack(Utils.join(dir, "pack", name)));
+            }
+        }
+        return packs;
+    }
+
+    /** Returns the names of the index files of the packs on disk.
+     * @return the names, sorted */
+    private List<String> packIndexNames() {
+        ArrayList<String> result = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(new File(dir, "pack"));
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(".idx")) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the names of the index files of the packs read.
+     * @return the names, sorted */
+    private List<String> packNames() {
+        ArrayList<String> result = new ArrayList<>();
+        for (Pack pack : packs) {
+            result.add(pack.getIndexFile().getName());
+        }
+        return result;
+    }
+
+    /** Returns the pack holding the object with this id.
+     * @param id id of the object
+     * @return the pack, or null if the object is not packed */
+    private Pack packOf(String id) {
+        for (Pack pack : packs()) {
+            if (pack.contains(id)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the names of the directories of loose objects, each
+     * named by the first two digits of the ids it holds.
+     * @return the directory names, sorted */
+    private List<String> looseDirs() {
+        ArrayList<String> result = new ArrayList<>();
+        String[] names = dir.list();
+        if (names != null) {
+            Arrays.sort(names);
+            for (String name : names) {
+                if (name.length() == 2 && new File(dir, name).isDirectory()) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns a stream of the decompressed loose file of this object,
+     * decompressed by the codec recorded in its first byte.
+     * @param id id of the object
+     * @return header and contents */
+    private InputStream inflate(String id) {
+        if (!contains(id)) {
+            throw Utils.error("No object with id %s.", id);
+        }
+        try {
+            InputStream in = new BufferedInputStream(
+                    new FileInputStream(fileOf(id)), BUFFER_SIZE);
+            in.mark(1);
+            int first = in.read();
+            if ((first & CODEC_MARK) == 0) {
+                in.reset();
+                return Codec.forId(Codec.DEFLATE).decompress(in);
+            }
+            return Codec.forId(first & ~CODEC_MARK).decompress(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream compressing into TMP with the store's codec,
+     * after the byte recording which codec that is.
+     * @param tmp a new file
+     * @return the stream */
+    private OutputStream compress(File tmp) throws IOException {
+        OutputStream out = new FileOutputStream(tmp);
+        out.write(CODEC_MARK | codec.id());
+        return codec.compress(out);
+    }
+
+    /** Reads the header of object ID from IN, up to and including the
+     * NUL that ends it.
+     * @param in stream positioned at the start of the object
+     * @param id id of the object
+     * @return the header, without the NUL */
+    private static String readHeader(InputStream in, String id)
+            throws IOException {
+        StringBuilder header = new StringBuilder();
+        for (int c = in.read(); c != 0; c = in.read()) {
+            if (c == -1) {
+                throw Utils.error("Corrupt object %s.", id);
+            }
+            header.append((char) c);
+        }
+        return header.toString();
+    }
+
+    /** Returns a new temporary file in the store, to be installed once
+     * its id is known or deleted once used.
+     * @return the file */
+    File tempFile() {
+        try {
+            dir.mkdirs();
+            return File.createTempFile("tmp", null, dir);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Moves TMP into place as the loose file of object ID, unless that
+     * object is already stored, as it may be by another thread at the
+     * same moment.
+     * @param tmp a completed temporary file
+     * @param id id of its contents
+     * @return the id */
+    private String install(File tmp, String id) {
+        File f = fileOf(id);
+        if (contains(id)) {
+            tmp.delete();
+            return id;
+        }
+        f.getParentFile().mkdirs();
+        try {
+            Files.move(tmp.toPath(), f.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            if (f.isFile()) {
+                return id;
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        written(f);
+        return id;
+    }
+}
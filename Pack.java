@@ -0,0 +1,491 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A packfile and its index, kept in .gitlet/objects/pack.  The pack
+ * holds many objects one after another, each compressed on its own,
+ * some stored as deltas against an earlier object of the same pack; the
+ * index lists the ids of the objects, sorted, with the offset of each in
+ * the pack.  Both files are mapped into memory when the pack is opened,
+ * so ids are looked up by binary search over the mapped index and
+ * objects are decompressed straight from the mapped pack; a pack is
+ * mapped whole, so it may not exceed 2 GB.
+ * <p>
+ * The pack starts with MAGIC, VERSION and the number of objects.  Each
+ * object starts with a byte holding its type code, with DELTA added if
+ * it is a delta and the id of its {@link Codec} shifted by CODEC_SHIFT,
+ * followed by the length of its contents; a delta is followed by how
+ * many bytes before it its base starts and, if it is not compressed, by
+ * its own length.  The compressed contents or delta follow.  The index
+ * starts with INDEX_MAGIC and VERSION, then a fanout table giving, for
+ * each possible first byte, the number of ids whose first byte is not
+ * greater, followed by the ids and the offsets.
+ * @author Sara Wang
+ */
+class Pack {
+
+    /** First four bytes of a pack. */
+    static final int MAGIC = 0x4750414b;
+
+    /** First four bytes of a pack index. */
+    static final int INDEX_MAGIC = 0x47494458;
+
+    /** Version of the format. */
+    static final int VERSION = 1;
+
+    /** Number of entries in the fanout table. */
+    static final int FANOUT = 256;
+
+    /** Flag added to the type code of an object stored as a delta. */
+    static final int DELTA = 0x10;
+
+    /** Position of the codec id in the first byte of an object. */
+    static final int CODEC_SHIFT = 5;
+
+    /** Mask of the type code in the first byte of an object. */
+    private static final int TYPE_MASK = 0x0f;
+
+    /** Most bytes of delta bases kept in memory by one pack. */
+    static final long CACHE_LIMIT = 16 << 20;
+
+    /** Length of an id in bytes. */
+    static final int ID_BYTES = Utils.UID_LENGTH / 2;
+
+    /** Offset of the fanout table in the index. */
+    private static final int FANOUT_START = 8;
+
+    /** Offset of the ids in the index. */
+    private static final int IDS_START = FANOUT_START + 4 * FANOUT;
+
+    /** Longest header an object in a pack can have. */
+    private static final int MAX_HEADER = 32;
+
+    /** Object types by type code. */
+    private static final String[] TYPES = {
+        null, ObjectStore.BLOB, ObjectStore.TREE, ObjectStore.COMMIT
+    };
+
+    /** The pack. */
+    private final File packFile;
+
+    /** The index. */
+    private final File indexFile;
+
+    /** The index, mapped. */
+    private final MappedByteBuffer index;
+
+    /** The pack, mapped. */
+    private final MappedByteBuffer data;
+
+    /** Number of objects in the pack. */
+    private final int count;
+
+    /** Contents of delta bases read recently, by offset, least recently
+     *  used first. */
+    private final LinkedHashMap<Long, byte[]> bases;
+
+    /** Total length of the contents in BASES. */
+    private long cached;
+
+    /** The pack whose index is INDEXFILE.
+     * @param indexFile a pack index, next to its pack */
+    Pack(File indexFile) {
+        this.indexFile = indexFile;
+        String name = indexFile.getName();
+        this.packFile = new File(indexFile.getParentFile(),
+                name.substring(0, name.length() - ".idx".length())
+                + ".pack");
+        this.bases = new LinkedHashMap<>(16, 0.75f, true);
+        this.index = map(indexFile);
+        this.data = map(packFile);
+        if (index.getInt(0) != INDEX_MAGIC || index.getInt(4) != VERSION
+                || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw Utils.error("Corrupt pack %s.", name);
+        }
+        this.count = fanout(FANOUT - 1);
+    }
+
+    /** Returns the code stored for objects of type TYPE.
+     * @param type an object type
+     * @return its code */
+    static int typeCode(String type) {
+        return Arrays.asList(TYPES).indexOf(type);
+    }
+
+    /** Returns the pack.
+     * @return the pack file */
+    File getPackFile() {
+        return packFile;
+    }
+
+    /** Returns the index.
+     * @return the index file */
+    File getIndexFile() {
+        return indexFile;
+    }
+
+    /** Returns the ids of the objects in this pack, read from the index
+     * as they are asked for.
+     * @return the ids, sorted */
+    List<String> ids() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int i) {
+                byte[] raw = new byte[ID_BYTES];
+                index.duplicate().position(IDS_START + i * ID_BYTES).get(raw);
+                return toHex(raw);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    /** Returns whether this pack holds the object with this id.
+     * @param id id of an object
+     * @return whether it is in the pack */
+    boolean contains(String id) {
+        return offsetOf(id) >= 0;
+    }
+
+    /** Returns the type of an object in this pack.
+     * @param id id of the object
+     * @return its type */
+    String typeOf(String id) {
+        return TYPES[entryAt(offsetOf(id)).code];
+    }
+
+    /** Returns the length of the contents of an object in this pack.
+     * @param id id of the object
+     * @return the length in bytes */
+    long sizeOf(String id) {
+        return entryAt(offsetOf(id)).size;
+    }
+
+    /** Returns a stream of the contents of an object in this pack.
+     * Objects stored whole are inflated from the mapped pack as they
+     * are read; deltas are resolved in memory.
+     * @param id id of the object
+     * @return the contents */
+    InputStream open(String id) {
+        long offset = offsetOf(id);
+        Entry e = entryAt(offset);
+        if (e.base < 0) {
+            return streamOf(e);
+        }
+        return new ByteArrayInputStream(contentsAt(offset));
+    }
+
+    /** Writes the contents of an object in this pack to FILE.  Objects
+     * stored uncompressed go from the pack to the file with transferTo,
+     * without passing through the heap; deflated objects are inflated
+     * from the mapped pack into a direct buffer and written from there.
+     * @param id id of the object
+     * @param file the file to create or overwrite */
+    void copyTo(String id, File file) {
+        long offset = offsetOf(id);
+        Entry e = entryAt(offset);
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (e.base >= 0) {
+                ByteBuffer buf = ByteBuffer.wrap(contentsAt(offset));
+                while (buf.hasRemaining()) {
+                    out.write(buf);
+                }
+            } else if (e.codec.id() == Codec.STORE) {
+                try (FileChannel in = FileChannel.open(packFile.toPath(),
+                        StandardOpenOption.READ)) {
+                    long done = 0;
+                    while (done < e.size) {
+                        done += in.transferTo(e.data + done, e.size - done,
+                                out);
+                    }
+                }
+            } else if (e.codec.id() == Codec.DEFLATE) {
+                inflateTo(e, out);
+            } else {
+                try (InputStream in = streamOf(e)) {
+                    byte[] bytes = new byte[ObjectStore.BUFFER_SIZE];
+                    for (int n = in.read(bytes); n != -1; n = in.read(bytes)) {
+                        ByteBuffer buf = ByteBuffer.wrap(bytes, 0, n);
+                        while (buf.hasRemaining()) {
+                            out.write(buf);
+                        }
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the offset of the object with this id in the pack,
+     * searching only the ids that share its first byte.
+     * @param id id of an object
+     * @return the offset, or -1 if it is not in the pack */
+    private long offsetOf(String id) {
+        if (id == null || id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] raw = toRaw(id);
+        int b = raw[0] & 0xff;
+        int lo = b == 0 ? 0 : fanout(b - 1);
+        int hi = fanout(b) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareId(mid, raw);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return index.getLong(IDS_START + count * ID_BYTES
+                        + mid * 8);
+            }
+        }
+        return -1;
+    }
+
+    /** Compares the id at position I of the index with RAW.
+     * @param i position of an id in the index
+     * @param raw bytes of an id
+     * @return negative, zero or positive as the id at I is less than,
+     *         equal to or greater than RAW */
+    private int compareId(int i, byte[] raw) {
+        int start = IDS_START + i * ID_BYTES;
+        for (int k = 0; k < ID_BYTES; k++) {
+            int cmp = Integer.compare(index.get(start + k) & 0xff,
+                    raw[k] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns entry B of the fanout table.
+     * @param b a first byte
+     * @return the number of ids whose first byte is at most B */
+    private int fanout(int b) {
+        return index.getInt(FANOUT_START + 4 * b);
+    }
+
+    /** Returns the contents of the object at OFFSET, applying deltas.
+     * @param offset offset of the object in the pack
+     * @return the contents */
+    private byte[] contentsAt(long offset) {
+        Entry e = entryAt(offset);
+        try (InputStream in = streamOf(e)) {
+            byte[] bytes = in.readAllBytes();
+            return e.base < 0 ? bytes : Delta.apply(baseAt(e.base), bytes);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of the delta base at OFFSET, from the cache
+     * if it was read recently.
+     * @param offset offset of the base in the pack
+     * @return the contents */
+    private byte[] baseAt(long offset) {
+        synchronized (bases) {
+            byte[] bytes = bases.get(offset);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        byte[] bytes = contentsAt(offset);
+        synchronized (bases) {
+            if (bases.put(offset, bytes) == null) {
+                cached += bytes.length;
+            }
+            Iterator<Map.Entry<Long, byte[]>> it =
+                    bases.entrySet().iterator();
+            while (cached > CACHE_LIMIT && it.hasNext()) {
+                cached -= it.next().getValue().length;
+                it.remove();
+            }
+        }
+        return bytes;
+    }
+
+    /** Returns the header of the object at OFFSET.
+     * @param offset offset of the object in the pack
+     * @return the header */
+    private Entry entryAt(long offset) {
+        if (offset < 0) {
+            throw Utils.error("No such object in pack %s.",
+                    packFile.getName());
+        }
+        byte[] buf = new byte[MAX_HEADER];
+        ByteBuffer b = data.duplicate().position((int) offset);
+        b.get(buf, 0, Math.min(buf.length, b.remaining()));
+        return new Entry(buf, offset);
+    }
+
+    /** Returns a stream of the stored data of E, decompressed, read
+     * from the mapped pack.
+     * @param e header of an object
+     * @return its contents, or its delta */
+    private InputStream streamOf(Entry e) {
+        ByteBuffer buf = data.duplicate().position((int) e.data);
+        if (e.stored >= 0) {
+            buf.limit((int) (e.data + e.stored));
+        }
+        return e.codec.decompress(new BufferStream(buf));
+    }
+
+    /** Inflates the data of E from the mapped pack into OUT.
+     * @param e header of a deflated object stored whole
+     * @param out the file to write */
+    private void inflateTo(Entry e, FileChannel out) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data.duplicate().position((int) e.data));
+        ByteBuffer buf = ByteBuffer.allocateDirect(ObjectStore.BUFFER_SIZE);
+        try {
+            while (!inflater.finished()) {
+                if (inflater.inflate(buf) == 0 && (inflater.needsInput()
+                        || inflater.needsDictionary())) {
+                    throw Utils.error("Corrupt pack %s.", packFile.getName());
+                }
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    out.write(buf);
+                }
+                buf.clear();
+            }
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Returns FILE mapped read-only.
+     * @param file a pack or index
+     * @return its contents */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns RAW as hexadecimal digits.
+     * @param raw bytes of an id
+     * @return the id */
+    static String toHex(byte[] raw) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : raw) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /** Returns the bytes of ID.
+     * @param id an id in hexadecimal digits
+     * @return its bytes */
+    static byte[] toRaw(String id) {
+        byte[] raw = new byte[id.length() / 2];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) Integer.parseInt(id.substring(2 * i, 2 * i + 2),
+                    16);
+        }
+        return raw;
+    }
+
+    /** The header of an object in a pack. */
+    private static class Entry {
+
+        /** Type code of the object. */
+        private final int code;
+
+        /** Codec the data is compressed with. */
+        private final Codec codec;
+
+        /** Length of the contents. */
+        private final long size;
+
+        /** Offset of the delta base, or -1 if stored whole. */
+        private final long base;
+
+        /** Length of the stored data if it is not compressed, else -1. */
+        private final long stored;
+
+        /** Offset of the stored data. */
+        private final long data;
+
+        /** The header read into BUF from OFFSET.
+         * @param buf the bytes at the start of the object
+         * @param offset offset of the object */
+        Entry(byte[] buf, long offset) {
+            int[] pos = {1};
+            this.code = buf[0] & TYPE_MASK;
+            this.codec = Codec.forId((buf[0] & 0xff) >> CODEC_SHIFT);
+            this.size = Delta.readNumber(buf, pos);
+            this.base = (buf[0] & DELTA) == 0 ? -1
+                    : offset - Delta.readNumber(buf, pos);
+            if (codec.id() != Codec.STORE) {
+                this.stored = -1;
+            } else if (base < 0) {
+                this.stored = size;
+            } else {
+                this.stored = Delta.readNumber(buf, pos);
+            }
+            this.data = offset + pos[0];
+        }
+    }
+
+    /** A stream reading from a buffer of the mapped pack. */
+    private static class BufferStream extends InputStream {
+
+        /** The buffer, positioned at the next byte to read. */
+        private final ByteBuffer buf;
+
+        /** A stream of the bytes of BUF from its position on.
+         * @param buf the buffer */
+        BufferStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * Writes objects of a store into a new pack.  Objects are sorted by
+ * type, by the name of a file they were a version of, and by size,
+ * largest first, so that versions of the same file come together; each
+ * is then tried as a delta against the few objects before it, and
+ * stored as the smallest delta found if that saves at least half its
+ * size.  Chains of deltas are kept short so that reading an object
+ * never applies more than MAX_DEPTH of them.  Objects are compressed
+ * with the store's codec, except those it does not shrink, which are
+ * stored as they are so that they can be copied out of the pack without
+ * decompressing.
+ * @author Sara Wang
+ */
+class PackWriter {
+
+    /** Number of preceding objects each object is tried against. */
+    static final int WINDOW = 10;
+
+    /** Longest chain of deltas allowed. */
+    static final int MAX_DEPTH = 50;
+
+    /** Objects larger than this are stored whole, without reading them
+     *  into memory. */
+    static final long BIG_OBJECT = 32 << 20;
+
+    /** Most bytes of objects kept in memory as delta candidates. */
+    static final long WINDOW_MEMORY = 64 << 20;
+
+    /** The store the objects are read from. */
+    private final ObjectStore store;
+
+    /** Name of a file each blob was a version of, by blob id. */
+    private final Map<String, String> names;
+
+    /** A writer packing objects of STORE.
+     * @param store the store holding the objects
+     * @param names a filename for each blob id known to be a file
+     *              version, used to bring versions of a file together */
+    PackWriter(ObjectStore store, Map<String, String> names) {
+        this.store = store;
+        this.names = names;
+    }
+
+    /** Writes a pack of the objects with ids IDS into DIR, with its
+     * index, named by the ids it holds.
+     * @param dir the pack directory
+     * @param ids ids of the objects to pack
+     * @return the index of the new pack */
+    File write(File dir, Collection<String> ids) {
+        ArrayList<Item> items = new ArrayList<>();
+        for (String id : ids) {
+            items.add(new Item(id, store.typeOf(id), store.sizeOf(id),
+                    names.get(id)));
+        }
+        items.sort(Comparator.comparing((Item it) -> it.type)
+                .thenComparing(it -> it.name,
+                        Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(it -> -it.size));
+        dir.mkdirs();
+        File packTmp = tempFile(dir);
+        File indexTmp = tempFile(dir);
+        MessageDigest packDigest = Utils.sha1Digest();
+        try (Counter out = new Counter(new BufferedOutputStream(
+                new FileOutputStream(packTmp), ObjectStore.BUFFER_SIZE),
+                packDigest)) {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(Pack.MAGIC);
+            data.writeInt(Pack.VERSION);
+            data.writeInt(items.size());
+            Codec codec = store.getCodec();
+            ArrayDeque<Item> window = new ArrayDeque<>();
+            long windowSize = 0;
+            for (Item it : items) {
+                it.offset = out.count;
+                if (it.size > BIG_OBJECT) {
+                    writeHeader(out, it, null, codec, 0);
+                    try (InputStream in = store.open(it.id);
+                         OutputStream z = codec.compress(new Shield(out))) {
+                        byte[] buf = new byte[ObjectStore.BUFFER_SIZE];
+                        for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+                            z.write(buf, 0, n);
+                        }
+                    }
+                    continue;
+                }
+                it.body = store.read(it.id);
+                Item base = null;
+                byte[] delta = null;
+                for (Item candidate : window) {
+                    if (!candidate.type.equals(it.type)
+                            || candidate.depth >= MAX_DEPTH) {
+                        continue;
+                    }
+                    byte[] d = Delta.create(candidate.body, it.body);
+                    if (d.length < it.size / 2
+                            && (delta == null || d.length < delta.length)) {
+                        base = candidate;
+                        delta = d;
+                    }
+                }
+                if (base != null) {
+                    it.depth = base.depth + 1;
+                }
+                byte[] stored = base == null ? it.body : delta;
+                byte[] packed = codec.compress(stored);
+                if (packed.length >= stored.length) {
+                    writeHeader(out, it, base, Codec.forId(Codec.STORE),
+                            stored.length);
+                    out.write(stored);
+                } else {
+                    writeHeader(out, it, base, codec, 0);
+                    out.write(packed);
+                }
+                window.addLast(it);
+                windowSize += it.size;
+                while (window.size() > WINDOW || windowSize > WINDOW_MEMORY) {
+                    Item old = window.removeFirst();
+                    windowSize -= old.size;
+                    old.body = null;
+                }
+            }
+            out.flush();
+            out.digest = null;
+            out.write(packDigest.digest());
+        } catch (IOException excp) {
+            packTmp.delete();
+            indexTmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        items.sort(Comparator.comparing((Item it) -> it.id));
+        String name = writeIndex(indexTmp, items);
+        File pack = new File(dir, "pack-" + name + ".pack");
+        File index = new File(dir, "pack-" + name + ".idx");
+        install(packTmp, pack);
+        install(indexTmp, index);
+        store.written(pack);
+        store.written(index);
+        return index;
+    }
+
+    /** Writes the header of IT to OUT.
+     * @param out the pack
+     * @param it the object
+     * @param base the object IT is a delta against, or null
+     * @param codec the codec IT is compressed with
+     * @param length length of the delta, if it is not compressed */
+    private static void writeHeader(OutputStream out, Item it, Item base,
+                                    Codec codec, long length)
+            throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        int code = Pack.typeCode(it.type) | codec.id() << Pack.CODEC_SHIFT;
+        if (base != null) {
+            code |= Pack.DELTA;
+        }
+        header.write(code);
+        Delta.writeNumber(header, it.size);
+        if (base != null) {
+            Delta.writeNumber(header, it.offset - base.offset);
+            if (codec.id() == Codec.STORE) {
+                Delta.writeNumber(header, length);
+            }
+        }
+        header.writeTo(out);
+    }
+
+    /** Writes the index of ITEMS, sorted by id, to FILE.
+     * @param file the index file
+     * @param items the objects of the pack
+     * @return the name of the pack, a hash of its ids */
+    private static String writeIndex(File file, ArrayList<Item> items) {
+        int[] fanout = new int[Pack.FANOUT];
+        for (Item it : items) {
+            fanout[Integer.parseInt(it.id.substring(0, 2), 16)] += 1;
+        }
+        for (int b = 1; b < Pack.FANOUT; b++) {
+            fanout[b] += fanout[b - 1];
+        }
+        MessageDigest md = Utils.sha1Digest();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file),
+                        ObjectStore.BUFFER_SIZE))) {
+            out.writeInt(Pack.INDEX_MAGIC);
+            out.writeInt(Pack.VERSION);
+            for (int n : fanout) {
+                out.writeInt(n);
+            }
+            for (Item it : items) {
+                byte[] raw = Pack.toRaw(it.id);
+                out.write(raw);
+                md.update(raw);
+            }
+            for (Item it : items) {
+                out.writeLong(it.offset);
+            }
+        } catch (IOException excp) {
+            file.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Utils.hexDigest(md);
+    }
+
+    /** Returns a new temporary file in DIR.
+     * @param dir the pack directory
+     * @return the file */
+    private static File tempFile(File dir) {
+        try {
+            return File.createTempFile("tmp", null, dir);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Moves the completed file TMP to F.
+     * @param tmp a temporary file
+     * @param f its final name */
+    private static void install(File tmp, File f) {
+        try {
+            Files.move(tmp.toPath(), f.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** An object being packed. */
+    private static class Item {
+
+        /** Id of the object. */
+        private final String id;
+
+        /** Type of the object. */
+        private final String type;
+
+        /** Length of its contents. */
+        private final long size;
+
+        /** Name of a file it was a version of, or null. */
+        private final String name;
+
+        /** Number of deltas applied to read it. */
+        private int depth;
+
+        /** Offset of the object in the pack. */
+        private long offset;
+
+        /** Contents, while the object is a delta candidate. */
+        private byte[] body;
+
+        /** An object with id ID, type TYPE, length SIZE, and filename
+         * NAME.
+         * @param id the id
+         * @param type the type
+         * @param size the length of the contents
+         * @param name a filename, or null */
+        Item(String id, String type, long size, String name) {
+            this.id = id;
+            this.type = type;
+            this.size = size;
+            this.name = name;
+        }
+    }
+
+    /** A stream that leaves the pack open when closed, so that each
+     *  object can be compressed by a stream of its own. */
+    private static class Shield extends FilterOutputStream {
+
+        /** A stream writing to OUT.
+         * @param out the pack */
+        Shield(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /** A stream that counts and hashes the bytes written through it. */
+    private static class Counter extends FilterOutputStream {
+
+        /** Bytes written so far. */
+        private long count;
+
+        /** Digest of the bytes written, or null to stop hashing. */
+        private MessageDigest digest;
+
+        /** A stream writing to OUT and hashing into DIGEST.
+         * @param out the underlying stream
+         * @param digest the digest to update */
+        Counter(OutputStream out, MessageDigest digest) {
+            super(out);
+            this.digest = digest;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count += 1;
+            if (digest != null) {
+                digest.update((byte) b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+            if (digest != null) {
+                digest.update(b, off, len);
+            }
+        }
+    }
+}
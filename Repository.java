@@ -0,0 +1,693 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * The on-disk layout of a Gitlet repository.  Opening a repository reads
+ * only its settings; refs, the index and commits are read the first time
+ * a command asks for them.  Changes to refs, the index and settings, and
+ * the working files a command checks out or removes, are all made at
+ * once by {@link #save()} through a {@link Journal}, so a command that
+ * is killed leaves either all of its changes or none; opening the
+ * repository finishes the changes of any such command.
+ * <p>
+ * Commands in other processes are kept apart by a lock on .gitlet/lock,
+ * held from opening the repository until {@link #close()}.  Commands
+ * that change nothing share it, so they run alongside each other and
+ * wait only for commands that make changes, which hold it alone.  A
+ * branch is changed only under a lock of its own, and only if it still
+ * names the commit it named when it was read.
+ * <p>
+ * A repository may be kept open across commands, as the daemon keeps
+ * it, locking it again for each with {@link #reopen}.  What it read is
+ * kept until the files it was read from are found changed, as by a
+ * command of another process.
+ * @author Sara Wang
+ */
+class Repository {
+
+    /** Name of the branch a new repository starts on. */
+    static final String DEFAULT_BRANCH = "master";
+
+    /** Name of the file locked by each command. */
+    static final String LOCK = "lock";
+
+    /** Number of commits the commit index may leave to be found in the
+     *  commit graph before a command that changes the repository writes
+     *  it anew. */
+    static final int REINDEX = 256;
+
+    /** Setting naming the codec new objects are compressed with. */
+    static final String CODEC = "codec";
+
+    /** Files of the repository whose change means what was read from
+     *  it may be stale.  Every file is replaced by renaming a new one
+     *  over it, which also changes the directory of the branches when
+     *  a branch changes. */
+    private static final List<String> WATCHED = Arrays.asList("HEAD",
+            "index", "config", "remotes", "commit-graph", "commit-index",
+            "refs/heads");
+
+    /** The .gitlet directory. */
+    private final File root;
+
+    /** The working directory, holding the .gitlet directory. */
+    private final File workTree;
+
+    /** Object store of this repository. */
+    private final ObjectStore store;
+
+    /** Branch heads read or changed so far, by branch name. A null
+     *  value marks a deleted branch. */
+    private final HashMap<String, String> refs;
+
+    /** Names of the branches changed since the last save. */
+    private final ArrayList<String> dirtyRefs;
+
+    /** Name of the current branch, or null if not read yet. */
+    private String head;
+
+    /** Whether the current branch changed since the last save. */
+    private boolean headChanged;
+
+    /** The commit graph, or null if not read yet. */
+    private CommitGraph graph;
+
+    /** Sorted index of the commit ids, as kept in .gitlet/commit-index,
+     *  or null if not read yet. */
+    private IdIndex commitIndex;
+
+    /** The staging area, or null if not read yet. */
+    private Index index;
+
+    /** The last snapshot of the working directory taken by this command,
+     * or null if none was. */
+    private Snapshot snapshot;
+
+    /** The remotes, name to path, or null if not read yet. */
+    private HashMap<String, String> remotes;
+
+    /** Settings of this repository, kept in .gitlet/config. */
+    private final Properties config;
+
+    /** Whether the settings changed since the last save. */
+    private boolean configChanged;
+
+    /** Working files to write when saving, path to blob id, with a null
+     *  id for a file to remove. */
+    private final LinkedHashMap<String, String> workingFiles;
+
+    /** Branch heads as first read from disk, by branch name, with a null
+     *  value for a branch that did not exist. */
+    private final HashMap<String, String> readRefs;
+
+    /** Whether this command may change the repository. */
+    private boolean writable;
+
+    /** Channel of the repository lock file, or null if not locked. */
+    private FileChannel lockChannel;
+
+    /** Stat data of the WATCHED files when the lock was last released,
+     *  or null. */
+    private String stamp;
+
+    /** A repository kept in ROOT, locked for this command.
+     * @param root the .gitlet directory
+     * @param store the object store of the repository
+     * @param writable whether the command may change the repository */
+    Repository(File root, ObjectStore store, boolean writable) {
+        this.root = root;
+        this.workTree = root.getAbsoluteFile().toPath().normalize()
+                .getParent().toFile();
+        this.store = store;
+        this.writable = writable;
+        this.refs = new HashMap<>();
+        this.readRefs = new HashMap<>();
+        this.dirtyRefs = new ArrayList<>();
+        this.workingFiles = new LinkedHashMap<>();
+        this.config = new Properties();
+        if (root.isDirectory()) {
+            lock();
+        }
+        reset();
+    }
+
+    /** Returns the repository in the current directory, locked for a
+     * command that changes nothing unless WRITABLE.
+     * @param writable whether the command may change the repository
+     * @return the repository */
+    static Repository open(boolean writable) {
+        return new Repository(new File(".gitlet"), ObjectStore.local(),
+                writable);
+    }
+
+    /** Returns the repository whose working directory is DIR, locked
+     * for a command that changes nothing unless WRITABLE.
+     * @param dir the working directory
+     * @param writable whether the command may change the repository
+     * @return the repository */
+    static Repository open(File dir, boolean writable) {
+        File root = new File(dir, ".gitlet");
+        return new Repository(root,
+                new ObjectStore(new File(root, "objects")), writable);
+    }
+
+    /** Locks the repository again, after {@link #close()}, for another
+     * command, which changes nothing unless WRITABLE.  If any file read
+     * from may have changed since the lock was released, everything
+     * read is dropped, to be read again.
+     * @param writable whether the command may change the repository */
+    void reopen(boolean writable) {
+        this.writable = writable;
+        lock();
+        if (stamp == null || !stamp.equals(stamp())) {
+            reset();
+        }
+    }
+
+    /** Drops everything read from the repository, and every change not
+     * saved, then reads its settings again. */
+    void reset() {
+        refs.clear();
+        readRefs.clear();
+        dirtyRefs.clear();
+        workingFiles.clear();
+        head = null;
+        headChanged = false;
+        graph = null;
+        commitIndex = null;
+        index = null;
+        snapshot = null;
+        remotes = null;
+        config.clear();
+        configChanged = false;
+        File f = new File(root, "config");
+        if (f.exists()) {
+            try (InputStream in = new FileInputStream(f)) {
+                config.load(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        store.setCodec(Codec.forName(config(CODEC)));
+    }
+
+    /** Returns the stat data of the WATCHED files.
+     * @return their sizes, modification times and inodes */
+    private String stamp() {
+        StringBuilder result = new StringBuilder();
+        for (String name : WATCHED) {
+            result.append(name);
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                        new File(root, name).toPath(),
+                        BasicFileAttributes.class);
+                result.append(' ').append(attrs.size())
+                        .append(' ').append(attrs.lastModifiedTime())
+                        .append(' ').append(attrs.fileKey());
+            } catch (IOException excp) {
+                result.append(" -");
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Returns the value of a setting.
+     * @param key name of the setting
+     * @return its value, or its default if it was never set */
+    String config(String key) {
+        return config.getProperty(key, key.equals(CODEC) ? Codec.DEFAULT
+                : null);
+    }
+
+    /** Sets a setting, applying it to this command as well.
+     * @param key name of the setting
+     * @param value its new value */
+    void setConfig(String key, String value) {
+        config.setProperty(key, value);
+        configChanged = true;
+        if (key.equals(CODEC)) {
+            store.setCodec(Codec.forName(value));
+        }
+    }
+
+    /** Returns whether the repository has been initialized.
+     * @return whether .gitlet exists */
+    boolean exists() {
+        return root.isDirectory();
+    }
+
+    /** Creates the directories of a new repository. */
+    void create() {
+        root.mkdir();
+        store.getDir().mkdir();
+        Utils.join(root, "refs", "heads").mkdirs();
+        lock();
+        graph = new CommitGraph(new File(root, "commit-graph"));
+        index = new Index();
+        remotes = new HashMap<>();
+    }
+
+    /** Returns the working directory.
+     * @return the directory holding .gitlet */
+    File workTree() {
+        return workTree;
+    }
+
+    /** Returns the working file at PATH.
+     * @param path a path from the top of the working directory, or an
+     *        absolute path
+     * @return the file */
+    File workingFile(String path) {
+        return workTree.toPath().resolve(Paths.get(path)).toFile();
+    }
+
+    /** Returns the object store.
+     * @return the store */
+    ObjectStore store() {
+        return store;
+    }
+
+    /** Returns the commit with this id, from the cache of the store if
+     * it was read before.
+     * @param id full id of a commit
+     * @return the commit */
+    Commit commit(String id) {
+        return Commit.load(store, id);
+    }
+
+    /** Adds C, which was just made, to the commit graph.
+     * @param c the new commit */
+    void addCommit(Commit c) {
+        graph().add(c.getId(), c.getParents());
+    }
+
+    /** Returns whether ID names a commit.
+     * @param id full id of an object
+     * @return whether it is a commit */
+    boolean isCommit(String id) {
+        return graph().contains(id);
+    }
+
+    /** Returns the id of the commit that PREFIX abbreviates.  The ids
+     * are looked up in the commit index, and the commits made since it
+     * was written are read from the end of the commit graph, so neither
+     * the graph nor the ids are read whole.
+     * @param prefix an abbreviated or full commit id
+     * @return the full id, or null if no commit id starts with PREFIX
+     * @throws GitletException if several commit ids start with PREFIX */
+    String resolveCommit(String prefix) {
+        String found = commitIndex().resolve(prefix);
+        String recent = new IdIndex(unindexedCommitIds()).resolve(prefix);
+        if (found == null) {
+            return recent;
+        }
+        if (recent != null && !recent.equals(found)) {
+            throw Utils.error("Ambiguous commit id %s.", prefix);
+        }
+        return found;
+    }
+
+    /** Returns the commit index, which is empty if it was never written
+     * or does not match the commit graph.
+     * @return the index */
+    private IdIndex commitIndex() {
+        if (commitIndex == null) {
+            commitIndex = IdIndex.read(new File(root, "commit-index"));
+            if (commitIndex == null
+                    || commitIndex.covered() > graph().length()) {
+                commitIndex = new IdIndex(Collections.emptyList());
+            }
+        }
+        return commitIndex;
+    }
+
+    /** Returns the ids of the commits left out of the commit index.
+     * @return commit ids, oldest first */
+    private List<String> unindexedCommitIds() {
+        return graph().idsSince(commitIndex().covered());
+    }
+
+    /** Returns the ids of all commits in the repository, oldest first.
+     * @return the commit ids */
+    List<String> commitIds() {
+        return graph().ids();
+    }
+
+    /** Returns the commit graph, building it from the commits in the
+     * store if the repository predates it.
+     * @return the graph */
+    CommitGraph graph() {
+        if (graph == null) {
+            File f = new File(root, "commit-graph");
+            boolean existed = f.exists();
+            graph = new CommitGraph(f);
+            if (!existed) {
+                graph.rebuild(this, scanCommitIds());
+            }
+        }
+        return graph;
+    }
+
+    /** Returns the ids of all commit objects in the store.
+     * @return the commit ids */
+    private List<String> scanCommitIds() {
+        ArrayList<String> result = new ArrayList<>();
+        for (String id : store.ids()) {
+            if (store.typeOf(id).equals(ObjectStore.COMMIT)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the name of the current branch.
+     * @return branch name */
+    String currentBranch() {
+        if (head == null) {
+            head = Utils.readContentsAsString(new File(root, "HEAD"));
+        }
+        return head;
+    }
+
+    /** Makes NAME the current branch.
+     * @param name branch name */
+    void setCurrentBranch(String name) {
+        head = name;
+        headChanged = true;
+    }
+
+    /** Returns whether a branch with this name exists.
+     * @param name branch name
+     * @return whether it exists */
+    boolean hasBranch(String name) {
+        return readRef(name) != null;
+    }
+
+    /** Returns the branch with this name, or null if there is none.
+     * @param name branch name
+     * @return the branch */
+    Branch branch(String name) {
+        String id = readRef(name);
+        return id == null ? null : new Branch(name, id);
+    }
+
+    /** Records the head of B.
+     * @param b the branch */
+    void writeBranch(Branch b) {
+        refs.put(b.getName(), b.getHead());
+        dirtyRefs.add(b.getName());
+    }
+
+    /** Deletes the branch with this name.
+     * @param name branch name */
+    void deleteBranch(String name) {
+        refs.put(name, null);
+        dirtyRefs.add(name);
+    }
+
+    /** Returns the names of all branches, sorted.
+     * @return branch names */
+    List<String> branchNames() {
+        ArrayList<String> result = new ArrayList<>();
+        List<String> onDisk = Utils.plainFilenamesIn(refsDir());
+        if (onDisk != null) {
+            for (String name : onDisk) {
+                if (!refs.containsKey(name)) {
+                    result.add(name);
+                }
+            }
+        }
+        for (String name : refs.keySet()) {
+            if (refs.get(name) != null) {
+                result.add(name);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Returns the staging area.
+     * @return the index */
+    Index index() {
+        if (index == null) {
+            File f = new File(root, "index");
+            index = f.exists() ? Utils.readObject(f, Index.class)
+                    : new Index();
+        }
+        return index;
+    }
+
+    /** Returns a snapshot of the working directory.
+     * @return the snapshot */
+    Snapshot snapshot() {
+        snapshot = new Snapshot(workTree, index(), store);
+        return snapshot;
+    }
+
+    /** Returns the remotes.
+     * @return remote name to path mapping */
+    @SuppressWarnings("unchecked")
+    HashMap<String, String> remotes() {
+        if (remotes == null) {
+            File f = new File(root, "remotes");
+            remotes = f.exists() ? Utils.readObject(f, HashMap.class)
+                    : new HashMap<String, String>();
+        }
+        return remotes;
+    }
+
+    /** Sets the working file at PATH to the contents of blob BLOB when
+     * this command's changes are saved, or removes it if BLOB is null,
+     * along with any directories left empty.
+     * @param path path of a working file
+     * @param blob id of a blob, or null */
+    void checkout(String path, String blob) {
+        workingFiles.remove(path);
+        workingFiles.put(path, blob);
+    }
+
+    /** Returns whether this command has working files to write or
+     * remove that are not yet saved.
+     * @return whether any are pending */
+    boolean hasPendingCheckouts() {
+        return !workingFiles.isEmpty();
+    }
+
+    /** Forgets the working files to write or remove that are not yet
+     * saved. */
+    void dropCheckouts() {
+        workingFiles.clear();
+    }
+
+    /** Writes back whatever was changed, all together.  A command that
+     * changes nothing writes back only the file stats cached in the
+     * index, less those of files its last snapshot did not find.
+     * @throws GitletException if a branch to change was changed by
+     *         another command since it was read */
+    void save() {
+        Journal journal = new Journal(root, store);
+        if (index != null && snapshot != null) {
+            index.prune(snapshot);
+            snapshot = null;
+        }
+        if (!writable) {
+            if (index != null) {
+                journal.write(new File(root, "index"),
+                        Utils.serialize(index));
+            }
+            journal.commit();
+            return;
+        }
+        for (Map.Entry<String, String> e : workingFiles.entrySet()) {
+            if (e.getValue() == null) {
+                journal.checkout(workingFile(e.getKey()), null);
+            }
+        }
+        for (Map.Entry<String, String> e : workingFiles.entrySet()) {
+            if (e.getValue() != null) {
+                journal.checkout(workingFile(e.getKey()), e.getValue());
+            }
+        }
+        workingFiles.clear();
+        TreeSet<String> changedRefs = new TreeSet<>(dirtyRefs);
+        for (String name : changedRefs) {
+            File f = Utils.join(refsDir(), name);
+            if (refs.get(name) == null) {
+                journal.delete(f);
+            } else {
+                journal.write(f, refs.get(name).getBytes(
+                        StandardCharsets.UTF_8));
+            }
+        }
+        dirtyRefs.clear();
+        if (headChanged) {
+            journal.write(new File(root, "HEAD"),
+                    head.getBytes(StandardCharsets.UTF_8));
+            headChanged = false;
+        }
+        if (commitIndex != null
+                && unindexedCommitIds().size() >= REINDEX) {
+            long covered = graph.length();
+            journal.write(new File(root, "commit-index"),
+                    IdIndex.encode(graph.ids(), covered));
+            commitIndex = null;
+        }
+        if (graph != null) {
+            graph.save(journal);
+        }
+        if (index != null) {
+            journal.write(new File(root, "index"), Utils.serialize(index));
+        }
+        if (remotes != null) {
+            journal.write(new File(root, "remotes"),
+                    Utils.serialize(remotes));
+        }
+        if (configChanged) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                config.store(out, null);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            journal.write(new File(root, "config"), out.toByteArray());
+            configChanged = false;
+        }
+        ArrayList<FileChannel> refLocks = new ArrayList<>();
+        try {
+            for (String name : changedRefs) {
+                refLocks.add(lockRef(name));
+                if (readRefs.containsKey(name) && !Objects.equals(
+                        readRefs.get(name), readRefFile(name))) {
+                    throw Utils.error("Branch %s was changed by another "
+                            + "command.", name);
+                }
+            }
+            store.sync();
+            journal.commit();
+            for (String name : changedRefs) {
+                readRefs.put(name, refs.get(name));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            for (FileChannel ch : refLocks) {
+                try {
+                    ch.close();
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        }
+    }
+
+    /** Returns the head of the branch with this name.
+     * @param name branch name
+     * @return commit id, or null if there is no such branch */
+    private String readRef(String name) {
+        if (refs.containsKey(name)) {
+            return refs.get(name);
+        }
+        String id = readRefFile(name);
+        refs.put(name, id);
+        readRefs.put(name, id);
+        return id;
+    }
+
+    /** Returns the head of the branch with this name as it is on disk.
+     * @param name branch name
+     * @return commit id, or null if there is no such branch */
+    private String readRefFile(String name) {
+        File f = Utils.join(refsDir(), name);
+        return f.isFile() ? Utils.readContentsAsString(f) : null;
+    }
+
+    /** Locks the repository for this command, shared unless the command
+     * is writable, first finishing the changes of any command that was
+     * killed. */
+    private void lock() {
+        File journal = new File(root, Journal.FILE);
+        try {
+            lockChannel = FileChannel.open(new File(root, LOCK).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            while (true) {
+                FileLock lock = lockChannel.lock(0, Long.MAX_VALUE,
+                        !writable);
+                if (!journal.exists()) {
+                    return;
+                }
+                if (writable) {
+                    Journal.recover(root, store);
+                    return;
+                }
+                lock.release();
+                lock = lockChannel.lock();
+                Journal.recover(root, store);
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Locks the branch with this name against other commands until
+     * the returned channel is closed.
+     * @param name branch name
+     * @return the channel holding the lock */
+    private FileChannel lockRef(String name) throws IOException {
+        File f = Utils.join(root, "refs", "locks", name);
+        f.getParentFile().mkdirs();
+        FileChannel ch = FileChannel.open(f.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            ch.lock();
+        } catch (IOException excp) {
+            ch.close();
+            throw excp;
+        }
+        return ch;
+    }
+
+    /** Releases the repository lock, noting the stat data of the files
+     * read from so that {@link #reopen} can tell whether they changed. */
+    void close() {
+        if (lockChannel != null) {
+            stamp = stamp();
+            try {
+                lockChannel.close();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            lockChannel = null;
+        }
+    }
+
+    /** Returns the directory of the branch heads.
+     * @return the directory */
+    private File refsDir() {
+        return Utils.join(root, "refs", "heads");
+    }
+}
@@ -0,0 +1,136 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+
+/**
+ * The plain files of the working directory at one moment, found by
+ * walking it and all its subdirectories, each directory listed as a
+ * separate task on the common fork-join pool.  Files and directories
+ * named in .gitletignore are left out, and ignored directories are not
+ * walked.  A command scans the directory once and shares the snapshot
+ * among all of its checks.  Files are compared with blobs in parallel,
+ * using ids cached in the index where the stat data shows a file
+ * unchanged and comparing bytes otherwise.
+ * @author Sara Wang
+ */
+class Snapshot {
+
+    /** The working directory. */
+    private final File dir;
+
+    /** Index holding the stat cache. */
+    private final Index index;
+
+    /** Object store holding the blobs files are compared with. */
+    private final ObjectStore store;
+
+    /** Patterns of the files left out. */
+    private final Ignore ignore;
+
+    /** Paths of the files, sorted. */
+    private final List<String> files;
+
+    /** Paths of the files, for lookup. */
+    private final HashSet<String> present;
+
+    /** A snapshot of the plain files under DIR.
+     * @param dir the working directory
+     * @param index index holding the stat cache
+     * @param store the object store */
+    Snapshot(File dir, Index index, ObjectStore store) {
+        this.dir = dir;
+        this.index = index;
+        this.store = store;
+        this.ignore = new Ignore(dir);
+        ArrayList<String> found = new Walk(dir, "").invoke();
+        Collections.sort(found);
+        this.files = Collections.unmodifiableList(found);
+        this.present = new HashSet<>(files);
+    }
+
+    /** Returns the paths of the files, sorted.
+     * @return paths from the top of the working directory */
+    List<String> files() {
+        return files;
+    }
+
+    /** Returns whether the snapshot holds a file at this path.  Files
+     * under ignored names are looked for on disk, since they may still
+     * be tracked.
+     * @param path path of a file
+     * @return whether it exists */
+    boolean contains(String path) {
+        return present.contains(path)
+                || ignore.ignoresFile(path)
+                && new File(dir, path).isFile();
+    }
+
+    /** Returns those files of EXPECTED that exist but whose contents
+     * differ from the blob they are mapped to, comparing in parallel.
+     * @param expected path to blob id mapping
+     * @return paths of the changed files */
+    Set<String> changed(Map<String, String> expected) {
+        return expected.keySet().parallelStream().filter(this::contains)
+                .filter(f -> !index.matches(dir, f, expected.get(f), store))
+                .collect(Collectors.toSet());
+    }
+
+    /** Lists the files of one directory, forking a task for each of its
+     *  subdirectories. */
+    private class Walk extends RecursiveTask<ArrayList<String>> {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1234572L;
+
+        /** The directory. */
+        private final File dir;
+
+        /** Its path followed by a separator, or empty at the top. */
+        private final String prefix;
+
+        /** A task listing DIR, whose files have paths starting with PREFIX.
+         * @param dir the directory
+         * @param prefix path of the directory with a trailing separator */
+        Walk(File dir, String prefix) {
+            this.dir = dir;
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected ArrayList<String> compute() {
+            ArrayList<String> result = new ArrayList<>();
+            File[] children = dir.listFiles();
+            if (children == null) {
+                return result;
+            }
+            ArrayList<Walk> subdirs = new ArrayList<>();
+            for (File child : children) {
+                String path = prefix + child.getName();
+                if (Files.isDirectory(child.toPath(),
+                        LinkOption.NOFOLLOW_LINKS)) {
+                    if (!ignore.ignoresDir(path)) {
+                        Walk w = new Walk(child, path + Tree.SEPARATOR);
+                        w.fork();
+                        subdirs.add(w);
+                    }
+                } else if (child.isFile() && !ignore.ignoresFile(path)) {
+                    result.add(path);
+                }
+            }
+            for (Walk w : subdirs) {
+                result.addAll(w.join());
+            }
+            return result;
+        }
+    }
+}
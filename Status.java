@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * The state of a repository as reported by the status command: its
+ * branches, the staging area, and how the working directory differs
+ * from them.
+ * @author Sara Wang
+ */
+public class Status {
+
+    /** Change to a tracked file that is not staged. */
+    public static final String MODIFIED = "modified";
+
+    /** Deletion of a tracked file that is not staged. */
+    public static final String DELETED = "deleted";
+
+    /** Names of all branches, sorted. */
+    private final List<String> branches;
+
+    /** Name of the current branch. */
+    private final String currentBranch;
+
+    /** Files staged for addition, sorted. */
+    private final List<String> staged;
+
+    /** Files staged for removal, sorted. */
+    private final List<String> removed;
+
+    /** Files changed but not staged, to MODIFIED or DELETED. */
+    private final TreeMap<String, String> modified;
+
+    /** Files in the working directory that are not tracked, sorted. */
+    private final List<String> untracked;
+
+    /** The status of a repository.
+     * @param branches names of all branches, sorted
+     * @param currentBranch name of the current branch
+     * @param staged files staged for addition, sorted
+     * @param removed files staged for removal, sorted
+     * @param modified files changed but not staged, to how they changed
+     * @param untracked untracked files, sorted */
+    Status(List<String> branches, String currentBranch, List<String> staged,
+           List<String> removed, TreeMap<String, String> modified,
+           List<String> untracked) {
+        this.branches = branches;
+        this.currentBranch = currentBranch;
+        this.staged = staged;
+        this.removed = removed;
+        this.modified = modified;
+        this.untracked = untracked;
+    }
+
+    /** Returns the names of all branches.
+     * @return branch names, sorted */
+    public List<String> getBranches() {
+        return branches;
+    }
+
+    /** Returns the name of the current branch.
+     * @return branch name */
+    public String getCurrentBranch() {
+        return currentBranch;
+    }
+
+    /** Returns the files staged for addition.
+     * @return filenames, sorted */
+    public List<String> getStaged() {
+        return staged;
+    }
+
+    /** Returns the files staged for removal.
+     * @return filenames, sorted */
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    /** Returns the files changed in the working directory but not
+     * staged, each to MODIFIED or DELETED.
+     * @return filename to change mapping, sorted */
+    public TreeMap<String, String> getModified() {
+        return modified;
+    }
+
+    /** Returns the files in the working directory that are neither
+     * tracked nor staged, or are staged for removal.
+     * @return filenames, sorted */
+    public List<String> getUntracked() {
+        return untracked;
+    }
+}
@@ -0,0 +1,211 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A snapshot of one directory of the tracked files of a commit, mapping
+ * each filename in it to the id of the blob holding its contents and
+ * each subdirectory to the id of its own tree.  A tree is stored under
+ * the hash of its contents, so a commit that leaves a directory alone
+ * shares that directory's tree with its parent, and making a commit
+ * only writes the trees on the paths of the files it changes.
+ * @author Sara Wang
+ */
+public class Tree implements Serializable {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 123456789L;
+
+    /** Separator of the directories of a path. */
+    static final char SEPARATOR = '/';
+
+    /** Filename to blob id mapping of the files directly in this
+     *  directory, sorted so equal trees hash equally. */
+    private TreeMap<String, String> entries;
+
+    /** Name to tree id mapping of the subdirectories, sorted; null in
+     *  trees written before subdirectories were kept. */
+    private TreeMap<String, String> subtrees;
+
+    /** An empty tree. */
+    private Tree() {
+        this.entries = new TreeMap<>();
+        this.subtrees = new TreeMap<>();
+    }
+
+    /** Returns the files directly in this directory.
+     * @return filename to blob id mapping */
+    public HashMap<String, String> getBlobs() {
+        return new HashMap<>(entries);
+    }
+
+    /** Returns the subdirectories of this directory.
+     * @return name to tree id mapping */
+    public Map<String, String> getSubtrees() {
+        if (subtrees == null) {
+            subtrees = new TreeMap<>();
+        }
+        return subtrees;
+    }
+
+    /** Stores the trees of the files in BLOBS.
+     * @param store the object store, or null to only compute the id
+     * @param blobs path to blob id mapping
+     * @return id of the root tree */
+    static String write(ObjectStore store, Map<String, String> blobs) {
+        return update(store, null, blobs);
+    }
+
+    /** Stores the trees of the files of tree ID with CHANGES applied,
+     * reading and writing only the trees of the directories that hold
+     * changed paths; every other subtree is kept by its id.
+     * @param store the object store, or null to only compute the id
+     * @param id id of the root tree, or null for an empty tree
+     * @param changes path to new blob id mapping, with a null id for a
+     *                path to remove
+     * @return id of the new root tree */
+    static String update(ObjectStore store, String id,
+                         Map<String, String> changes) {
+        String result = updateDir(store, id, changes);
+        return result != null ? result : save(store, new Tree());
+    }
+
+    /** Returns every file of tree ID.
+     * @param store the object store
+     * @param id id of a tree
+     * @return path to blob id mapping */
+    static HashMap<String, String> flatten(ObjectStore store, String id) {
+        HashMap<String, String> result = new HashMap<>();
+        flatten(store, id, "", result);
+        return result;
+    }
+
+    /** Returns the files that differ between trees A and B, never
+     * reading a pair of subtrees with the same id.
+     * @param store the object store
+     * @param a id of a tree, or null for an empty tree
+     * @param b id of a tree, or null for an empty tree
+     * @return path to {blob id in A, blob id in B} mapping, sorted, with
+     *         null for a file missing from one side */
+    static TreeMap<String, String[]> diff(ObjectStore store, String a,
+                                          String b) {
+        TreeMap<String, String[]> result = new TreeMap<>();
+        diff(store, a, b, "", result);
+        return result;
+    }
+
+    /** Applies CHANGES to the directory with tree ID.
+     * @param store the object store, or null to only compute ids
+     * @param id id of its tree, or null if it is new
+     * @param changes path to blob id mapping, paths relative to it
+     * @return id of its new tree, or null if it is left empty */
+    private static String updateDir(ObjectStore store, String id,
+                                    Map<String, String> changes) {
+        Tree t = new Tree();
+        if (id != null) {
+            Tree old = load(store, id);
+            t.entries.putAll(old.entries);
+            t.getSubtrees().putAll(old.getSubtrees());
+        }
+        HashMap<String, HashMap<String, String>> byDir = new HashMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf(SEPARATOR);
+            if (slash >= 0) {
+                byDir.computeIfAbsent(path.substring(0, slash),
+                        k -> new HashMap<>())
+                        .put(path.substring(slash + 1), e.getValue());
+            } else if (e.getValue() == null) {
+                t.entries.remove(path);
+            } else {
+                t.entries.put(path, e.getValue());
+            }
+        }
+        for (Map.Entry<String, HashMap<String, String>> e
+                : byDir.entrySet()) {
+            String sub = updateDir(store,
+                    t.getSubtrees().get(e.getKey()), e.getValue());
+            if (sub == null) {
+                t.getSubtrees().remove(e.getKey());
+            } else {
+                t.getSubtrees().put(e.getKey(), sub);
+            }
+        }
+        if (t.entries.isEmpty() && t.getSubtrees().isEmpty()) {
+            return null;
+        }
+        return save(store, t);
+    }
+
+    /** Adds the files of tree ID to RESULT, their paths after PREFIX.
+     * @param store the object store
+     * @param id id of a tree
+     * @param prefix path of the directory of the tree
+     * @param result path to blob id mapping */
+    private static void flatten(ObjectStore store, String id, String prefix,
+                                Map<String, String> result) {
+        Tree t = load(store, id);
+        for (Map.Entry<String, String> e : t.entries.entrySet()) {
+            result.put(prefix + e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : t.getSubtrees().entrySet()) {
+            flatten(store, e.getValue(), prefix + e.getKey() + SEPARATOR,
+                    result);
+        }
+    }
+
+    /** Adds the files that differ between trees A and B to RESULT, their
+     * paths after PREFIX.
+     * @param store the object store
+     * @param a id of a tree, or null
+     * @param b id of a tree, or null
+     * @param prefix path of the directory of the trees
+     * @param result path to pair of blob ids mapping */
+    private static void diff(ObjectStore store, String a, String b,
+                             String prefix, Map<String, String[]> result) {
+        if (a != null && a.equals(b)) {
+            return;
+        }
+        Tree ta = a == null ? new Tree() : load(store, a);
+        Tree tb = b == null ? new Tree() : load(store, b);
+        TreeSet<String> names = new TreeSet<>(ta.entries.keySet());
+        names.addAll(tb.entries.keySet());
+        for (String name : names) {
+            String ia = ta.entries.get(name);
+            String ib = tb.entries.get(name);
+            if (ia == null || !ia.equals(ib)) {
+                result.put(prefix + name, new String[] {ia, ib});
+            }
+        }
+        TreeSet<String> dirs = new TreeSet<>(ta.getSubtrees().keySet());
+        dirs.addAll(tb.getSubtrees().keySet());
+        for (String dir : dirs) {
+            diff(store, ta.getSubtrees().get(dir), tb.getSubtrees().get(dir),
+                    prefix + dir + SEPARATOR, result);
+        }
+    }
+
+    /** Returns the tree with this id, which is shared and must not be
+     * changed.
+     * @param store the object store
+     * @param id id of a tree
+     * @return the tree */
+    private static Tree load(ObjectStore store, String id) {
+        return store.getObject(id, Tree.class);
+    }
+
+    /** Stores T.
+     * @param store the object store, or null to only compute the id
+     * @param t a tree
+     * @return its id */
+    private static String save(ObjectStore store, Tree t) {
+        if (store == null) {
+            return ObjectStore.hash(ObjectStore.TREE, Utils.serialize(t));
+        }
+        return store.putObject(ObjectStore.TREE, t);
+    }
+}
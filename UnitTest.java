@@ -1,9 +1,25 @@
 package gitlet;
 
 import ucb.junit.textui;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.zip.DeflaterOutputStream;
 import static org.junit.Assert.*;
 
 import org.junit.Test;
@@ -34,59 +50,50 @@ public class UnitTest {
 
 
         Branch b = new Branch("master", null);
-        Branch c = b;
 
-        assertEquals(b.getId(), c.getId());
-
-        Branch d = new Branch("master", null);
-
-        assertEquals(b.getId(), d.getId());
         assertEquals("master", b.getName());
+        assertNull(b.getHead());
 
-        HashMap<String, Blob> fakeBlobs = new HashMap<>();
+        HashMap<String, String> fakeBlobs = new HashMap<>();
         fakeBlobs.put("first", null);
         fakeBlobs.put("second", null);
         Commit a = new Commit("Unit", new Date(), fakeBlobs, null, true);
 
-        b.add(a);
-
-        assertEquals(b.getCommits().size(), 1);
+        b.changeHead(a.getId());
 
-        d.addAll(b);
+        assertEquals(a.getId(), b.getHead());
 
-        assertEquals(d.getCommits().size(), 1);
-
-        HashMap<String, Blob> fakeBlobs2 = new HashMap<>();
+        HashMap<String, String> fakeBlobs2 = new HashMap<>();
         fakeBlobs2.put("one", null);
         fakeBlobs2.put("two", null);
         Commit e = new Commit("Test.", new Date(), fakeBlobs2, null, true);
 
         assertEquals(e.getParents(), null);
 
-        b.add(e);
+        b.changeHead(e.getId());
 
-        assertEquals(b.getCommits().size(), 2);
+        assertEquals(e.getId(), b.getHead());
 
 
     }
 
     @Test
     public void testCommit() throws IOException {
-        HashMap<String, Blob> fakeBlobs = new HashMap<>();
+        HashMap<String, String> fakeBlobs = new HashMap<>();
         fakeBlobs.put("first", null);
         fakeBlobs.put("second", null);
         Commit c = new Commit("Unit test.", new Date(), fakeBlobs, null, true);
 
-        assertEquals(c.getBlobs().keySet().size(), 2);
-        assertEquals(c.getBlobs().get("first"), null);
-        assertEquals(c.getBlobs().get("second"), null);
+        assertEquals(c.getBlobs(null).keySet().size(), 2);
+        assertEquals(c.getBlobs(null).get("first"), null);
+        assertEquals(c.getBlobs(null).get("second"), null);
 
     }
 
 
     @Test
     public void testGetCommitMessage() throws IOException {
-        HashMap<String, Blob> fakeBlobs = new HashMap<>();
+        HashMap<String, String> fakeBlobs = new HashMap<>();
         fakeBlobs.put("first", null);
         fakeBlobs.put("second", null);
         Commit c = new Commit("Unit test.", new Date(), fakeBlobs, null, true);
@@ -97,7 +104,7 @@ public class UnitTest {
 
     @Test
     public void testGetCommitDate() throws IOException {
-        HashMap<String, Blob> fakeBlobs = new HashMap<>();
+        HashMap<String, String> fakeBlobs = new HashMap<>();
         fakeBlobs.put("first", null);
         fakeBlobs.put("second", null);
         Commit c = new Commit("Unit test.", new Date(0), fakeBlobs, null, true);
@@ -106,11 +113,646 @@ public class UnitTest {
 
     }
 
+    @Test
+    public void testObjectStore() throws IOException {
+        File dir = Files.createTempDirectory("objects").toFile();
+        ObjectStore store = new ObjectStore(dir);
+        byte[] content = "hello".getBytes(StandardCharsets.UTF_8);
+
+        String id = store.put(ObjectStore.BLOB, content);
+        assertEquals(id, store.put(ObjectStore.BLOB, content));
+        assertEquals(ObjectStore.hash(ObjectStore.BLOB, content), id);
+        assertTrue(store.contains(id));
+        assertEquals(ObjectStore.BLOB, store.typeOf(id));
+        assertArrayEquals(content, store.get(id));
+        assertFalse(store.contains(Utils.sha1("missing")));
+    }
+
+    @Test
+    public void testBlobIdIsContentHash() throws IOException {
+        File dir = Files.createTempDirectory("blobs").toFile();
+        File a = new File(dir, "a.txt");
+        File b = new File(dir, "b.txt");
+        File c = new File(dir, "c.txt");
+        Utils.writeContents(a, "same");
+        Utils.writeContents(b, "same");
+        Utils.writeContents(c, "different");
+
+        Blob blobA = new Blob(a.getPath());
+        Blob blobB = new Blob(b.getPath());
+        assertEquals(blobA.getId(), blobB.getId());
+        assertNotEquals(blobA.getId(), new Blob(c.getPath()).getId());
+        assertEquals(ObjectStore.hash(ObjectStore.BLOB,
+                "same".getBytes(StandardCharsets.UTF_8)), blobA.getId());
+
+        ObjectStore store = new ObjectStore(new File(dir, "objects"));
+        assertEquals(blobA.getId(), blobA.save(store));
+        assertEquals(blobA.getId(), blobB.save(store));
+        assertEquals(1, store.ids().size());
+    }
 
+    @Test
+    public void testIndexPrune() throws IOException {
+        File dir = Files.createTempDirectory("work").toFile();
+        File a = new File(dir, "a");
+        File b = new File(dir, "d/b");
+        b.getParentFile().mkdirs();
+        Utils.writeContents(a, "a");
+        Utils.writeContents(b, "b");
+        long past = System.currentTimeMillis() - 10 * Index.RACY_WINDOW;
+        a.setLastModified(past);
+        b.setLastModified(past);
+        Index index = new Index();
+        String id = index.hashOf(dir, "d/b");
+        index.hashOf(dir, "a");
+        assertEquals(id, index.cachedId(dir, "d/b"));
+
+        b.delete();
+        index.prune(new Snapshot(dir, index, null));
+        Utils.writeContents(b, "b");
+        b.setLastModified(past);
+        assertNull(index.cachedId(dir, "d/b"));
+        assertNotNull(index.cachedId(dir, "a"));
+    }
 
+    @Test
+    public void testContentsCompareBytes() throws IOException {
+        File dir = Files.createTempDirectory("contents").toFile();
+        ObjectStore store = new ObjectStore(dir);
+        byte[] big = new byte[3 * ObjectStore.BUFFER_SIZE + 5];
+        big[big.length - 1] = 1;
+        String id = store.put(ObjectStore.BLOB, big);
+
+        File same = new File(dir, "same");
+        Utils.writeContents(same, big);
+        assertTrue(Contents.sameFile(store, id, same));
+
+        big[big.length - 1] = 2;
+        File differs = new File(dir, "differs");
+        Utils.writeContents(differs, big);
+        assertFalse(Contents.sameFile(store, id, differs));
+
+        File shorter = new File(dir, "shorter");
+        Utils.writeContents(shorter, new byte[10]);
+        assertFalse(Contents.sameFile(store, id, shorter));
+
+        assertTrue(Contents.sameBlob(id, id));
+        assertFalse(Contents.sameBlob(id, null));
+    }
 
+    /** Saves GRAPH, kept in F, through a journal as a command does.
+     * @param graph a commit graph
+     * @param f its file */
+    private static void save(CommitGraph graph, File f) {
+        Journal journal = new Journal(f.getParentFile(), null);
+        graph.save(journal);
+        journal.commit();
+    }
 
+    @Test
+    public void testCommitGraph() throws IOException {
+        File f = new File(Files.createTempDirectory("graph").toFile(),
+                "commit-graph");
+        CommitGraph graph = new CommitGraph(f);
+        graph.add("a", null);
+        graph.add("b", Arrays.asList("a"));
+        graph.add("c", Arrays.asList("a"));
+        graph.add("d", Arrays.asList("b", "c"));
+        save(graph, f);
+
+        assertEquals(1, graph.generationOf("a"));
+        assertEquals(3, graph.generationOf("d"));
+        assertTrue(graph.isAncestor("a", "d"));
+        assertTrue(graph.isAncestor("c", "d"));
+        assertTrue(graph.isAncestor("d", "d"));
+        assertFalse(graph.isAncestor("b", "c"));
+        assertFalse(graph.isAncestor("d", "a"));
+
+        CommitGraph reread = new CommitGraph(f);
+        assertEquals(graph.ids(), reread.ids());
+
+        CommitGraph appended = new CommitGraph(f);
+        appended.add("e", Arrays.asList("d"));
+        save(appended, f);
+        assertTrue(Utils.readContentsAsString(f).endsWith("e 0 d\n"));
+        assertEquals(4, new CommitGraph(f).generationOf("e"));
+        assertTrue(appended.isAncestor("a", "e"));
+        assertEquals(Arrays.asList("b", "c"), reread.parentsOf("d"));
+        assertEquals(3, reread.generationOf("d"));
+    }
 
-}
+    @Test
+    public void testMergeBase() throws IOException {
+        File f = new File(Files.createTempDirectory("graph").toFile(),
+                "commit-graph");
+        CommitGraph graph = new CommitGraph(f);
+        graph.add("a", null);
+        graph.add("b", Arrays.asList("a"));
+        graph.add("c", Arrays.asList("a"));
+        graph.add("d", Arrays.asList("b", "c"));
+        graph.add("e", Arrays.asList("c", "b"));
+        graph.add("f", Arrays.asList("d"));
+        graph.add("g", Arrays.asList("e"));
+        graph.add("h", Arrays.asList("b"));
+
+        assertEquals("b", graph.mergeBase("h", "d"));
+        assertEquals("a", graph.mergeBase("h", "c"));
+        assertEquals("b", graph.mergeBase("b", "f"));
+        assertEquals("f", graph.mergeBase("f", "f"));
+        List<String> bases = graph.mergeBases("f", "g");
+        Collections.sort(bases);
+        assertEquals(Arrays.asList("b", "c"), bases);
+    }
+
+    @Test
+    public void testIdIndex() throws IOException {
+        String a = "ab12" + "0".repeat(36);
+        String b = "ab34" + "0".repeat(36);
+        String c = "c0" + "f".repeat(38);
+        IdIndex index = new IdIndex(Arrays.asList(c, b, a));
+        assertEquals(a, index.resolve("ab1"));
+        assertEquals(b, index.resolve("AB34"));
+        assertEquals(c, index.resolve("c"));
+        assertEquals(c, index.resolve(c));
+        assertNull(index.resolve("ab5"));
+        assertNull(index.resolve("d"));
+        assertNull(index.resolve("xyz"));
+        try {
+            index.resolve("ab");
+            fail("ambiguous prefix resolved");
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage().startsWith("Ambiguous"));
+        }
+
+        File f = new File(Files.createTempDirectory("index").toFile(),
+                "commit-index");
+        Utils.writeContents(f, IdIndex.encode(Arrays.asList(c, b, a), 42));
+        IdIndex read = IdIndex.read(f);
+        assertEquals(42, read.covered());
+        assertEquals(b, read.resolve("ab3"));
+        assertEquals(c, read.resolve("c0f"));
+        assertNull(read.resolve("c1"));
+    }
+
+    @Test
+    public void testDelta() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        byte[] base = sb.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] target = sb.insert(2000, "inserted\n").replace(10, 20, "")
+                .toString().getBytes(StandardCharsets.UTF_8);
+        byte[] delta = Delta.create(base, target);
+        assertTrue(delta.length < target.length / 10);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertArrayEquals(base, Delta.apply(target,
+                Delta.create(target, base)));
+        assertArrayEquals(new byte[0], Delta.apply(base,
+                Delta.create(base, new byte[0])));
+    }
+
+    @Test
+    public void testRepack() throws IOException {
+        File dir = Files.createTempDirectory("objects").toFile();
+        ObjectStore store = new ObjectStore(dir);
+        HashMap<String, String> names = new HashMap<>();
+        byte[][] versions = new byte[5][];
+        String[] ids = new String[versions.length];
+        for (int v = 0; v < versions.length; v++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 2000; i++) {
+                sb.append(i == v * 100 ? "changed" : "line " + i).append('\n');
+            }
+            versions[v] = sb.toString().getBytes(StandardCharsets.UTF_8);
+            ids[v] = store.put(ObjectStore.BLOB, versions[v]);
+            names.put(ids[v], "file.txt");
+        }
+        String treeId = store.put(ObjectStore.TREE, new byte[] {1, 2, 3});
+        byte[] noise = new byte[5000];
+        new Random(1).nextBytes(noise);
+        String noiseId = store.put(ObjectStore.BLOB, noise);
+
+        store.repack(names);
+        assertArrayEquals(new String[] {"pack"}, dir.list());
+        assertEquals(versions.length + 2, store.ids().size());
+        for (int v = 0; v < versions.length; v++) {
+            assertTrue(store.contains(ids[v]));
+            assertEquals(versions[v].length, store.sizeOf(ids[v]));
+            assertArrayEquals(versions[v], store.get(ids[v]));
+        }
+        assertEquals(ObjectStore.TREE, store.typeOf(treeId));
+        assertArrayEquals(new byte[] {1, 2, 3}, store.get(treeId));
+        File out = new File(Files.createTempDirectory("work").toFile(), "f");
+        store.copyTo(noiseId, out);
+        assertArrayEquals(noise, Files.readAllBytes(out.toPath()));
+        store.copyTo(ids[versions.length - 1], out);
+        assertArrayEquals(versions[versions.length - 1],
+                Files.readAllBytes(out.toPath()));
+
+        File pack = Utils.join(dir, "pack").listFiles((d, n) ->
+                n.endsWith(".pack"))[0];
+        assertTrue(pack.length() < versions[0].length);
+    }
 
+    @Test
+    public void testTreeSharing() throws IOException {
+        ObjectStore store = new ObjectStore(
+                Files.createTempDirectory("objects").toFile());
+        HashMap<String, String> files = new HashMap<>();
+        files.put("a", "1");
+        files.put("d/x", "2");
+        files.put("d/e/y", "3");
+        files.put("f/z", "4");
+        String root = Tree.write(store, files);
+        assertEquals(files, Tree.flatten(store, root));
+        assertEquals(root, Tree.write(null, files));
+
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("d/e/y", "5");
+        changes.put("a", null);
+        String next = Tree.update(store, root, changes);
+        Tree before = store.getObject(root, Tree.class);
+        Tree after = store.getObject(next, Tree.class);
+        assertEquals(before.getSubtrees().get("f"),
+                after.getSubtrees().get("f"));
+        assertNotEquals(before.getSubtrees().get("d"),
+                after.getSubtrees().get("d"));
+        assertFalse(after.getBlobs().containsKey("a"));
+
+        TreeMap<String, String[]> diff = Tree.diff(store, root, next);
+        assertEquals(Arrays.asList("a", "d/e/y"),
+                new ArrayList<>(diff.keySet()));
+        assertArrayEquals(new String[] {"1", null}, diff.get("a"));
+        assertArrayEquals(new String[] {"3", "5"}, diff.get("d/e/y"));
+
+        changes.clear();
+        changes.put("d/e/y", null);
+        changes.put("d/x", null);
+        Tree pruned = store.getObject(Tree.update(store, next, changes),
+                Tree.class);
+        assertFalse(pruned.getSubtrees().containsKey("d"));
+    }
+
+    @Test
+    public void testCodecs() throws IOException {
+        byte[] text = "to be or not to be, ".repeat(10000)
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] noise = new byte[LzCodec.BLOCK + 10];
+        new Random(2).nextBytes(noise);
+        for (String name : new String[] {"deflate", "lz", "none"}) {
+            Codec codec = Codec.forName(name);
+            assertEquals(codec, Codec.forId(codec.id()));
+            for (byte[] body : new byte[][] {text, noise, new byte[0]}) {
+                byte[] packed = codec.compress(body);
+                try (InputStream in = codec.decompress(
+                        new ByteArrayInputStream(packed))) {
+                    assertArrayEquals(body, in.readAllBytes());
+                }
+            }
+        }
+        assertTrue(Codec.forName("lz").compress(text).length
+                < text.length / 10);
+        assertNull(Codec.forName("zip"));
+
+        File dir = Files.createTempDirectory("objects").toFile();
+        ObjectStore store = new ObjectStore(dir);
+        store.setCodec(Codec.forName("lz"));
+        String id = store.put(ObjectStore.BLOB, text);
+        assertEquals((byte) (0x80 | Codec.LZ),
+                Files.readAllBytes(store.fileOf(id).toPath())[0]);
+        assertArrayEquals(text, store.get(id));
+
+        byte[] old = "written before codecs".getBytes(StandardCharsets.UTF_8);
+        String oldId = ObjectStore.hash(ObjectStore.BLOB, old);
+        store.fileOf(oldId).getParentFile().mkdirs();
+        try (OutputStream out = new DeflaterOutputStream(
+                new FileOutputStream(store.fileOf(oldId)))) {
+            out.write(ObjectStore.header(ObjectStore.BLOB, old.length));
+            out.write(old);
+        }
+        assertArrayEquals(old, store.get(oldId));
+    }
+
+    @Test
+    public void testDiff() {
+        String[] a = {"a\n", "b\n", "c\n", "a\n", "b\n", "b\n", "a\n"};
+        String[] b = {"c\n", "b\n", "a\n", "b\n", "a\n", "c\n"};
+        int cost = 0;
+        ArrayList<String> result = new ArrayList<>();
+        int i = 0;
+        for (int[] e : Diff.edits(a, b)) {
+            for (; i < e[0]; i++) {
+                result.add(a[i]);
+            }
+            result.addAll(Arrays.asList(b).subList(e[2], e[3]));
+            cost += e[1] - e[0] + e[3] - e[2];
+            i = e[1];
+        }
+        result.addAll(Arrays.asList(a).subList(i, a.length));
+        assertArrayEquals(b, result.toArray());
+        assertEquals(5, cost);
+
+        assertEquals("diff --git a/f b/f\n--- a/f\n+++ b/f\n"
+                + "@@ -1,2 +1,2 @@\n x\n-y\n+z\n\\ No newline at end of file\n",
+                Diff.unified("f", "x\ny\n".getBytes(StandardCharsets.UTF_8),
+                        "x\nz".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("", Diff.unified("f", new byte[1], new byte[1]));
+
+        TreeMap<String, String> x = new TreeMap<>();
+        TreeMap<String, String> y = new TreeMap<>();
+        x.put("a", "1");
+        x.put("b", "2");
+        y.put("b", "2");
+        y.put("c", "3");
+        TreeMap<String, String[]> changes = Diff.changes(x, y);
+        assertEquals(Arrays.asList("a", "c"),
+                new ArrayList<>(changes.keySet()));
+        assertArrayEquals(new String[] {null, "3"}, changes.get("c"));
+    }
 
+    /** Returns the three-way merge of texts BASE, OURS and THEIRS,
+     * followed by "!" if it conflicts.
+     * @param base the common ancestor
+     * @param ours one version
+     * @param theirs another version
+     * @return the result */
+    private static String merge3(String base, String ours, String theirs)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean conflict = Diff3.merge(base.getBytes(), ours.getBytes(),
+                theirs.getBytes(), out);
+        return out.toString() + (conflict ? "!" : "");
+    }
+
+    @Test
+    public void testDiff3() throws IOException {
+        String base = "a\nb\nc\nd\ne\n";
+        assertEquals("A\nb\nc\nd\nE\n",
+                merge3(base, "A\nb\nc\nd\ne\n", "a\nb\nc\nd\nE\n"));
+        assertEquals("a\nB\nc\nd\n",
+                merge3(base, "a\nB\nc\nd\ne\n", "a\nB\nc\nd\n"));
+        assertEquals("a\n<<<<<<< HEAD\nX\n=======\nY\n>>>>>>>\nc\nd\nE\n!",
+                merge3(base, "a\nX\nc\nd\ne\n", "a\nY\nc\nd\nE\n"));
+        assertEquals("<<<<<<< HEAD\nx\n=======\ny\n>>>>>>>\n!",
+                merge3("", "x\n", "y\n"));
+        assertEquals("a\nb\nc\nd\ne\nf", merge3(base, base, base + "f"));
+    }
+
+    @Test
+    public void testMergePlan() throws IOException {
+        ObjectStore store = new ObjectStore(
+                Files.createTempDirectory("objects").toFile());
+        String one = store.put(ObjectStore.BLOB, "a\nb\nc\n".getBytes());
+        String ours = store.put(ObjectStore.BLOB, "A\nb\nc\n".getBytes());
+        String theirs = store.put(ObjectStore.BLOB, "a\nb\nC\n".getBytes());
+        HashMap<String, String> base = new HashMap<>();
+        HashMap<String, String> cur = new HashMap<>();
+        HashMap<String, String> given = new HashMap<>();
+        base.put("both", one);
+        cur.put("both", ours);
+        given.put("both", theirs);
+        base.put("kept", one);
+        cur.put("kept", ours);
+        given.put("kept", one);
+        base.put("taken", one);
+        cur.put("taken", one);
+        given.put("taken", theirs);
+        base.put("removed", one);
+        cur.put("removed", one);
+        given.put("new", theirs);
+        cur.put("deleted", ours);
+        base.put("deleted", one);
+
+        TreeMap<String, Merge.Result> plan =
+                Merge.plan(store, base, cur, given);
+        assertEquals(Arrays.asList("both", "deleted", "new", "removed",
+                "taken"), new ArrayList<>(plan.keySet()));
+        assertArrayEquals("A\nb\nC\n".getBytes(),
+                store.get(plan.get("both").blob()));
+        assertFalse(plan.get("both").conflict());
+        assertTrue(plan.get("deleted").conflict());
+        assertEquals(theirs, plan.get("new").blob());
+        assertNull(plan.get("removed").blob());
+        assertEquals(theirs, plan.get("taken").blob());
+    }
+
+    @Test
+    public void testJournalRecovery() throws IOException {
+        File work = Files.createTempDirectory("work").toFile();
+        File root = new File(work, ".gitlet");
+        root.mkdir();
+        ObjectStore store = new ObjectStore(new File(root, "objects"));
+        String blob = new ObjectStore(Files.createTempDirectory("objects")
+                .toFile()).put(ObjectStore.BLOB, "new".getBytes());
+        File ref = new File(root, "ref");
+        File log = new File(root, "log");
+        File gone = new File(work, "d/gone");
+        Utils.writeContents(ref, "old");
+        Utils.writeContents(log, "one\n");
+        gone.getParentFile().mkdirs();
+        Utils.writeContents(gone, "x");
+
+        Journal journal = new Journal(root, store);
+        journal.checkout(gone, null);
+        journal.checkout(new File(work, "e/made"), blob);
+        journal.write(ref, "new".getBytes());
+        journal.append(log, 4, "two\n".getBytes());
+        try {
+            journal.commit();
+            fail("checked out a missing blob");
+        } catch (GitletException excp) {
+            assertTrue(new File(root, Journal.FILE).isFile());
+            assertEquals("old", Utils.readContentsAsString(ref));
+        }
+
+        File moved = new File(Files.createTempDirectory("elsewhere")
+                .toFile(), "work");
+        Files.move(work.toPath(), moved.toPath());
+        root = new File(moved, ".gitlet");
+        store = new ObjectStore(new File(root, "objects"));
+        store.put(ObjectStore.BLOB, "new".getBytes());
+        Utils.writeContents(new File(root, "log"), "one\ntw");
+        Journal.recover(root, store);
+        Journal.recover(root, store);
+        assertFalse(new File(root, Journal.FILE).exists());
+        assertEquals("new", Utils.readContentsAsString(new File(root, "ref")));
+        assertEquals("one\ntwo\n",
+                Utils.readContentsAsString(new File(root, "log")));
+        assertEquals("new",
+                Utils.readContentsAsString(new File(moved, "e/made")));
+        assertFalse(new File(moved, "d").exists());
+        assertFalse(work.exists());
+    }
+
+    @Test
+    public void testRefCompareAndSwap() throws IOException {
+        File root = new File(Files.createTempDirectory("repo").toFile(),
+                ".gitlet");
+        Repository repo = new Repository(root,
+                new ObjectStore(new File(root, "objects")), true);
+        repo.create();
+        repo.writeBranch(new Branch("master", "a"));
+        repo.save();
+
+        Branch b = repo.branch("master");
+        b.changeHead("b");
+        repo.writeBranch(b);
+        repo.save();
+        assertEquals("b", Utils.readContentsAsString(
+                Utils.join(root, "refs", "heads", "master")));
+
+        Utils.writeContents(Utils.join(root, "refs", "heads", "master"),
+                "other");
+        b.changeHead("c");
+        repo.writeBranch(b);
+        try {
+            repo.save();
+            fail("a branch changed by another command was overwritten");
+        } catch (GitletException excp) {
+            assertEquals("other", Utils.readContentsAsString(
+                    Utils.join(root, "refs", "heads", "master")));
+        } finally {
+            repo.close();
+        }
+    }
+
+    @Test
+    public void testCommandApi() throws IOException {
+        File dir = Files.createTempDirectory("repo").toFile();
+        File root = new File(dir, ".gitlet");
+        boolean cwdHadRepo = new File(".gitlet").exists();
+        try (CommitTree gitlet = CommitTree.open(dir, true)) {
+            gitlet.commitInit();
+            gitlet.branch("dev");
+            List<Commit> log = gitlet.log();
+            assertEquals(1, log.size());
+            assertEquals("initial commit", log.get(0).getCommitMessage());
+            assertEquals(Arrays.asList(log.get(0).getId()),
+                    gitlet.find("initial commit"));
+            try {
+                gitlet.branch("dev");
+                fail("a branch was made twice");
+            } catch (GitletException excp) {
+                assertEquals("A branch with that name already exists.",
+                        excp.getMessage());
+            }
+            gitlet.save();
+        }
+        assertTrue(Utils.join(root, "refs", "heads", "dev").isFile());
+        assertEquals(cwdHadRepo, new File(".gitlet").exists());
+
+        Utils.writeContents(new File(dir, "f"), "f");
+        try (CommitTree gitlet = CommitTree.open(dir, true)) {
+            gitlet.add("f");
+            Commit c = gitlet.commit("add f", null);
+            assertEquals(Arrays.asList("f"),
+                    new ArrayList<>(gitlet.blobsOf(c).keySet()));
+            gitlet.save();
+        }
+        try (CommitTree gitlet = CommitTree.open(dir, false)) {
+            assertEquals(2, gitlet.log().size());
+            assertTrue(gitlet.status().getUntracked().isEmpty());
+        }
+    }
+
+    @Test
+    public void testAddNormalizesPaths() throws IOException {
+        File dir = Files.createTempDirectory("repo").toFile();
+        Utils.writeContents(new File(dir, "x"), "x");
+        new File(dir, "d").mkdir();
+        Utils.writeContents(new File(dir, "d/x"), "d/x");
+        try (CommitTree gitlet = CommitTree.open(dir, true)) {
+            gitlet.commitInit();
+            gitlet.add("./x", "d/./x");
+            assertEquals(Arrays.asList("d/x", "x"),
+                    gitlet.status().getStaged());
+            try {
+                gitlet.add("d/../../x");
+                fail("a file outside the working directory was added");
+            } catch (GitletException excp) {
+                assertEquals("File is outside the working directory.",
+                        excp.getMessage());
+            }
+            try {
+                gitlet.add("d/../.gitlet/HEAD");
+                fail("a file of the repository was added");
+            } catch (GitletException excp) {
+                assertEquals("File is inside the repository directory.",
+                        excp.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testBatchParse() {
+        assertArrayEquals(new String[] {"commit", "two words", "it's"},
+                Batch.parse("  commit \"two words\"\tit\\'s "));
+        assertArrayEquals(new String[] {"find", "a \\ b", ""},
+                Batch.parse("find 'a \\ b' ''"));
+        assertEquals(0, Batch.parse("   ").length);
+        try {
+            Batch.parse("commit \"oops");
+            fail("an unfinished quote was accepted");
+        } catch (GitletException excp) {
+            return;
+        }
+    }
+
+    @Test
+    public void testObjectCache() {
+        ObjectCache cache = new ObjectCache(1000);
+        cache.put("head", "head", 100);
+        assertEquals("head", cache.get("head"));
+        for (int i = 0; i < 50; i++) {
+            cache.put("scan" + i, "scan", 100);
+        }
+        assertEquals("head", cache.get("head"));
+        assertNull(cache.get("scan0"));
+        assertNotNull(cache.get("scan49"));
+        cache.put("huge", "huge", 2000);
+        assertNull(cache.get("huge"));
+
+        byte[] contents = {1, 2, 3};
+        assertNull(cache.payload("blob"));
+        cache.putPayload("blob", contents);
+        assertArrayEquals(contents, cache.payload("blob"));
+
+        Map<String, Long> stats = cache.stats();
+        assertEquals(3L, (long) stats.get("object.hits"));
+        assertEquals(2L, (long) stats.get("object.misses"));
+        assertEquals(41L, (long) stats.get("object.evictions"));
+        assertEquals(1000L, (long) stats.get("object.bytes"));
+        assertEquals(1L, (long) stats.get("blob.hits"));
+        assertEquals(1L, (long) stats.get("blob.misses"));
+    }
+
+    @Test
+    public void testSnapshotWalk() throws IOException {
+        File dir = Files.createTempDirectory("work").toFile();
+        for (String path : new String[] {"a", "d/b", "d/e/c", "d/e/c.log",
+            "build/o", "d/build/p", "lib/build/q", ".gitlet/HEAD"}) {
+            File f = new File(dir, path);
+            f.getParentFile().mkdirs();
+            Utils.writeContents(f, path);
+        }
+        Utils.writeContents(new File(dir, Ignore.FILE),
+                "# comment\n*.log\n/build/\nlib/*/\n");
+        Snapshot snapshot = new Snapshot(dir, new Index(), null);
+        assertArrayEquals(new String[] {".gitletignore", "a", "d/b",
+            "d/build/p", "d/e/c"}, snapshot.files().toArray());
+
+        Ignore ignore = new Ignore(dir);
+        assertTrue(ignore.ignoresFile("x/y.log"));
+        assertTrue(ignore.ignoresFile("build/o"));
+        assertFalse(ignore.ignoresFile("d/build/p"));
+        assertTrue(ignore.ignoresDir("lib/build"));
+        assertFalse(ignore.ignoresDir("lib"));
+    }
+
+
+
+
+
+
+}